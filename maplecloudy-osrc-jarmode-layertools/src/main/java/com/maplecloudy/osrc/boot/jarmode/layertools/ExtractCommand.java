@@ -17,16 +17,31 @@
 package com.maplecloudy.osrc.boot.jarmode.layertools;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.BasicFileAttributeView;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.zip.ZipEntry;
-import java.util.zip.ZipInputStream;
+import java.util.zip.ZipFile;
 
 import org.springframework.util.Assert;
 import org.springframework.util.StreamUtils;
@@ -40,6 +55,11 @@ class ExtractCommand extends Command {
 
 	static final Option DESTINATION_OPTION = Option.of("destination", "string", "The destination to extract files to");
 
+	static final Option INCREMENTAL_OPTION = Option.flag("incremental",
+			"Only write files that changed since the last extract and remove stale files");
+
+	private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
 	private final Context context;
 
 	private final Layers layers;
@@ -49,7 +69,7 @@ class ExtractCommand extends Command {
 	}
 
 	ExtractCommand(Context context, Layers layers) {
-		super("extract", "Extracts layers from the jar for image creation", Options.of(DESTINATION_OPTION),
+		super("extract", "Extracts layers from the jar for image creation", Options.of(DESTINATION_OPTION, INCREMENTAL_OPTION),
 				Parameters.of("[<layer>...]"));
 		this.context = context;
 		this.layers = layers;
@@ -60,23 +80,51 @@ class ExtractCommand extends Command {
 		try {
 			File destination = options.containsKey(DESTINATION_OPTION) ? new File(options.get(DESTINATION_OPTION))
 					: this.context.getWorkingDir();
+			boolean incremental = options.containsKey(INCREMENTAL_OPTION);
+			Map<String, ExtractedLayerIndex> indexes = new LinkedHashMap<>();
 			for (String layer : this.layers) {
 				if (parameters.isEmpty() || parameters.contains(layer)) {
 					mkDirs(new File(destination, layer));
+					if (incremental) {
+						indexes.put(layer, ExtractedLayerIndex.load(destination, layer));
+					}
 				}
 			}
-			try (ZipInputStream zip = new ZipInputStream(new FileInputStream(this.context.getArchiveFile()))) {
-				ZipEntry entry = zip.getNextEntry();
-				Assert.state(entry != null, "File '" + this.context.getArchiveFile().toString()
-						+ "' is not compatible with layertools; ensure jar file is valid and launch script is not enabled");
-				while (entry != null) {
-					if (!entry.isDirectory()) {
-						String layer = this.layers.getLayer(entry);
-						if (parameters.isEmpty() || parameters.contains(layer)) {
-							write(zip, entry, new File(destination, layer));
+			File archiveFile = this.context.getArchiveFile();
+			try (ZipFile zip = new ZipFile(archiveFile);
+					FileChannel channel = FileChannel.open(archiveFile.toPath(), StandardOpenOption.READ)) {
+				Enumeration<? extends ZipEntry> entries = zip.entries();
+				Assert.state(entries.hasMoreElements(), "File '" + archiveFile.toString()
+						+ "' is not compatible with layertools; ensure jar file is valid and contains entries");
+				StoredEntries storedEntries = StoredEntries.get(channel);
+				ExecutorService executor = Executors.newFixedThreadPool(THREADS, new ExtractThreadFactory());
+				try {
+					List<Future<?>> writes = new ArrayList<>();
+					while (entries.hasMoreElements()) {
+						ZipEntry entry = entries.nextElement();
+						if (!entry.isDirectory()) {
+							// Entries of unrequested layers are skipped without being read
+							String layer = this.layers.getLayer(entry);
+							if (parameters.isEmpty() || parameters.contains(layer)) {
+								File layerDestination = new File(destination, layer);
+								ExtractedLayerIndex index = indexes.get(layer);
+								writes.add(executor.submit(() -> {
+									write(zip, channel, storedEntries, entry, layerDestination, index);
+									return null;
+								}));
+							}
 						}
 					}
-					entry = zip.getNextEntry();
+					for (Future<?> write : writes) {
+						get(write);
+					}
+					for (Map.Entry<String, ExtractedLayerIndex> index : indexes.entrySet()) {
+						removeStaleFiles(new File(destination, index.getKey()), index.getValue());
+						index.getValue().save();
+					}
+				}
+				finally {
+					executor.shutdownNow();
 				}
 			}
 		}
@@ -85,7 +133,28 @@ class ExtractCommand extends Command {
 		}
 	}
 
-	private void write(ZipInputStream zip, ZipEntry entry, File destination) throws IOException {
+	private void get(Future<?> write) throws IOException {
+		try {
+			write.get();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while extracting layers", ex);
+		}
+		catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	private void write(ZipFile zip, FileChannel channel, StoredEntries storedEntries, ZipEntry entry,
+			File destination, ExtractedLayerIndex index) throws IOException {
 		String canonicalOutputPath = destination.getCanonicalPath() + File.separator;
 		File file = new File(destination, entry.getName());
 		String canonicalEntryPath = file.getCanonicalPath();
@@ -93,9 +162,21 @@ class ExtractCommand extends Command {
 				() -> "Entry '" + entry.getName() + "' would be written to '" + canonicalEntryPath
 						+ "'. This is outside the output location of '" + canonicalOutputPath
 						+ "'. Verify the contents of your archive.");
+		if (index != null) {
+			index.add(entry);
+			if (index.isUpToDate(entry, file)) {
+				return;
+			}
+		}
 		mkParentDirs(file);
-		try (OutputStream out = new FileOutputStream(file)) {
-			StreamUtils.copy(zip, out);
+		long dataOffset = storedEntries.getDataOffset(entry);
+		if (dataOffset != -1) {
+			transfer(channel, dataOffset, entry.getSize(), file);
+		}
+		else {
+			try (InputStream in = zip.getInputStream(entry); OutputStream out = new FileOutputStream(file)) {
+				StreamUtils.copy(in, out);
+			}
 		}
 		try {
       Files.setAttribute(file.toPath(), "creationTime", entry.getCreationTime());
@@ -108,14 +189,67 @@ class ExtractCommand extends Command {
 		}
 	}
 
+	private void removeStaleFiles(File layerDestination, ExtractedLayerIndex index) throws IOException {
+		Path root = layerDestination.toPath();
+		List<Path> paths;
+		try (Stream<Path> walk = Files.walk(root)) {
+			paths = walk.sorted(Comparator.reverseOrder()).collect(Collectors.toList());
+		}
+		for (Path path : paths) {
+			if (Files.isDirectory(path)) {
+				if (!path.equals(root)) {
+					try (Stream<Path> children = Files.list(path)) {
+						if (!children.findAny().isPresent()) {
+							Files.delete(path);
+						}
+					}
+				}
+			}
+			else if (!index.contains(root.relativize(path).toString().replace(File.separatorChar, '/'))) {
+				Files.delete(path);
+			}
+		}
+	}
+
+	private void transfer(FileChannel channel, long position, long size, File file) throws IOException {
+		try (FileChannel out = FileChannel.open(file.toPath(), StandardOpenOption.WRITE, StandardOpenOption.CREATE,
+				StandardOpenOption.TRUNCATE_EXISTING)) {
+			long transferred = 0;
+			while (transferred < size) {
+				long count = channel.transferTo(position + transferred, size - transferred, out);
+				if (count <= 0) {
+					throw new IOException("Unexpected end of archive data for " + file);
+				}
+				transferred += count;
+			}
+		}
+	}
+
 	private void mkParentDirs(File file) throws IOException {
 		mkDirs(file.getParentFile());
 	}
 
 	private void mkDirs(File file) throws IOException {
-		if (!file.exists() && !file.mkdirs()) {
+		// Another worker may create the same directory concurrently
+		if (!file.mkdirs() && !file.isDirectory()) {
 			throw new IOException("Unable to create directory " + file);
 		}
 	}
 
+	/**
+	 * Factory for the daemon threads used to write extracted entries.
+	 */
+	private static final class ExtractThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "layertools-extract-" + this.count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
 }
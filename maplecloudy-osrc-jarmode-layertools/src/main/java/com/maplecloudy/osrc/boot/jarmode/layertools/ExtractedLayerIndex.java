@@ -0,0 +1,174 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.jarmode.layertools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * Records the entries extracted into a layer directory so that a later incremental
+ * extract can skip entries that have not changed. Each line of the index holds the CRC,
+ * size and name of an extracted entry. Indexes are kept outside of the layer directories
+ * so that they are never copied into an image.
+ *
+ * @author osrc
+ */
+final class ExtractedLayerIndex {
+
+	static final String DIRECTORY = ".layertools";
+
+	private static final int BUFFER_SIZE = 32 * 1024;
+
+	private final File file;
+
+	private final Map<String, Record> previous;
+
+	private final Map<String, Record> current = new ConcurrentHashMap<>();
+
+	private ExtractedLayerIndex(File file, Map<String, Record> previous) {
+		this.file = file;
+		this.previous = previous;
+	}
+
+	/**
+	 * Return if the given file already holds the content of the given entry. The
+	 * recorded CRC is trusted when the file still has the size and time it was extracted
+	 * with, otherwise the CRC of the file is computed.
+	 * @param entry the entry
+	 * @param file the file the entry is extracted to
+	 * @return {@code true} if the file is up to date
+	 * @throws IOException on IO error
+	 */
+	boolean isUpToDate(ZipEntry entry, File file) throws IOException {
+		if (entry.getCrc() == -1 || !file.isFile() || file.length() != entry.getSize()) {
+			return false;
+		}
+		Record record = this.previous.get(entry.getName());
+		if (record != null && record.crc == entry.getCrc() && record.size == entry.getSize()
+				&& hasLastModifiedTime(file, entry)) {
+			return true;
+		}
+		return getCrc(file) == entry.getCrc();
+	}
+
+	/**
+	 * Record that the given entry is present in the layer directory.
+	 * @param entry the entry
+	 */
+	void add(ZipEntry entry) {
+		this.current.put(entry.getName(), new Record(entry.getCrc(), entry.getSize()));
+	}
+
+	/**
+	 * Return if the given entry was added to this index.
+	 * @param name the entry name
+	 * @return if the entry was added
+	 */
+	boolean contains(String name) {
+		return this.current.containsKey(name);
+	}
+
+	/**
+	 * Save the added entries, replacing the previous content of the index.
+	 * @throws IOException on IO error
+	 */
+	void save() throws IOException {
+		File directory = this.file.getParentFile();
+		if (!directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Unable to create directory " + directory);
+		}
+		try (BufferedWriter writer = Files.newBufferedWriter(this.file.toPath(), StandardCharsets.UTF_8)) {
+			for (Map.Entry<String, Record> entry : new TreeMap<>(this.current).entrySet()) {
+				writer.write(Long.toHexString(entry.getValue().crc) + " " + entry.getValue().size + " "
+						+ entry.getKey() + "\n");
+			}
+		}
+	}
+
+	private boolean hasLastModifiedTime(File file, ZipEntry entry) throws IOException {
+		FileTime lastModifiedTime = entry.getLastModifiedTime();
+		return lastModifiedTime != null
+				&& lastModifiedTime.toMillis() == Files.getLastModifiedTime(file.toPath()).toMillis();
+	}
+
+	private long getCrc(File file) throws IOException {
+		CRC32 crc = new CRC32();
+		try (InputStream inputStream = new FileInputStream(file)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int bytesRead;
+			while ((bytesRead = inputStream.read(buffer)) != -1) {
+				crc.update(buffer, 0, bytesRead);
+			}
+		}
+		return crc.getValue();
+	}
+
+	/**
+	 * Load the index of the given layer, ignoring an index that cannot be read.
+	 * @param destination the extract destination
+	 * @param layer the layer
+	 * @return the index
+	 */
+	static ExtractedLayerIndex load(File destination, String layer) {
+		File file = new File(new File(destination, DIRECTORY), layer + ".idx");
+		Map<String, Record> previous = new ConcurrentHashMap<>();
+		if (file.isFile()) {
+			try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+				String line = reader.readLine();
+				while (line != null) {
+					String[] fields = line.split(" ", 3);
+					previous.put(fields[2], new Record(Long.parseLong(fields[0], 16), Long.parseLong(fields[1])));
+					line = reader.readLine();
+				}
+			}
+			catch (IOException | RuntimeException ex) {
+				// Compute the CRC of every file instead
+				previous.clear();
+			}
+		}
+		return new ExtractedLayerIndex(file, previous);
+	}
+
+	/**
+	 * The recorded details of an extracted entry.
+	 */
+	private static final class Record {
+
+		private final long crc;
+
+		private final long size;
+
+		Record(long crc, long size) {
+			this.crc = crc;
+			this.size = size;
+		}
+
+	}
+
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.jarmode.layertools;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.ZipEntry;
+
+/**
+ * Locates the data of the stored (uncompressed) entries of a zip archive so that they
+ * can be copied straight from the archive file, for example with
+ * {@link FileChannel#transferTo}, rather than through an {@code InputStream}. Only
+ * regular zip archives are supported, entries of zip64 archives are simply not located.
+ *
+ * @author osrc
+ */
+final class StoredEntries {
+
+	private static final StoredEntries NONE = new StoredEntries(null, new HashMap<>());
+
+	private static final int END_OF_CENTRAL_DIRECTORY_SIGNATURE = 0x06054b50;
+
+	private static final int CENTRAL_DIRECTORY_SIGNATURE = 0x02014b50;
+
+	private static final int LOCAL_FILE_HEADER_SIGNATURE = 0x04034b50;
+
+	private static final int END_OF_CENTRAL_DIRECTORY_SIZE = 22;
+
+	private static final int CENTRAL_DIRECTORY_HEADER_SIZE = 46;
+
+	private static final int LOCAL_FILE_HEADER_SIZE = 30;
+
+	private static final int MAXIMUM_COMMENT_LENGTH = 0xFFFF;
+
+	private static final long ZIP64_MAGIC = 0xFFFFFFFFL;
+
+	private final FileChannel channel;
+
+	private final Map<String, Long> localHeaderOffsets;
+
+	private StoredEntries(FileChannel channel, Map<String, Long> localHeaderOffsets) {
+		this.channel = channel;
+		this.localHeaderOffsets = localHeaderOffsets;
+	}
+
+	/**
+	 * Return the offset of the data of the given entry within the archive file.
+	 * @param entry the entry
+	 * @return the offset or {@code -1} if the entry is not stored or could not be located
+	 * @throws IOException on IO error
+	 */
+	long getDataOffset(ZipEntry entry) throws IOException {
+		Long localHeaderOffset = (entry.getMethod() == ZipEntry.STORED) ? this.localHeaderOffsets.get(entry.getName())
+				: null;
+		if (localHeaderOffset == null) {
+			return -1;
+		}
+		// The extra field of the local header may differ from the central directory
+		ByteBuffer header = read(this.channel, localHeaderOffset, LOCAL_FILE_HEADER_SIZE);
+		if (header.getInt(0) != LOCAL_FILE_HEADER_SIGNATURE) {
+			return -1;
+		}
+		return localHeaderOffset + LOCAL_FILE_HEADER_SIZE + (header.getShort(26) & 0xFFFF)
+				+ (header.getShort(28) & 0xFFFF);
+	}
+
+	/**
+	 * Read the central directory of the archive opened by the given channel.
+	 * @param channel the archive channel
+	 * @return the stored entries, never {@code null}
+	 * @throws IOException on IO error
+	 */
+	static StoredEntries get(FileChannel channel) throws IOException {
+		long endOffset = findEndOfCentralDirectory(channel);
+		if (endOffset == -1) {
+			return NONE;
+		}
+		ByteBuffer end = read(channel, endOffset, END_OF_CENTRAL_DIRECTORY_SIZE);
+		int entries = end.getShort(10) & 0xFFFF;
+		long size = end.getInt(12) & ZIP64_MAGIC;
+		long offset = end.getInt(16) & ZIP64_MAGIC;
+		if (entries == 0xFFFF || size == ZIP64_MAGIC || offset == ZIP64_MAGIC || size > Integer.MAX_VALUE) {
+			return NONE;
+		}
+		// Offsets are relative to the start of the zip data, which follows any launch script
+		long prefix = endOffset - size - offset;
+		ByteBuffer centralDirectory = read(channel, endOffset - size, (int) size);
+		Map<String, Long> localHeaderOffsets = new HashMap<>();
+		int position = 0;
+		for (int i = 0; i < entries; i++) {
+			if (centralDirectory.getInt(position) != CENTRAL_DIRECTORY_SIGNATURE) {
+				return NONE;
+			}
+			int method = centralDirectory.getShort(position + 10) & 0xFFFF;
+			int nameLength = centralDirectory.getShort(position + 28) & 0xFFFF;
+			int extraLength = centralDirectory.getShort(position + 30) & 0xFFFF;
+			int commentLength = centralDirectory.getShort(position + 32) & 0xFFFF;
+			long localHeaderOffset = centralDirectory.getInt(position + 42) & ZIP64_MAGIC;
+			if (method == ZipEntry.STORED && localHeaderOffset != ZIP64_MAGIC) {
+				byte[] name = new byte[nameLength];
+				((Buffer) centralDirectory).position(position + CENTRAL_DIRECTORY_HEADER_SIZE);
+				centralDirectory.get(name);
+				localHeaderOffsets.put(new String(name, StandardCharsets.UTF_8), prefix + localHeaderOffset);
+			}
+			position += CENTRAL_DIRECTORY_HEADER_SIZE + nameLength + extraLength + commentLength;
+		}
+		return new StoredEntries(channel, localHeaderOffsets);
+	}
+
+	private static long findEndOfCentralDirectory(FileChannel channel) throws IOException {
+		long fileSize = channel.size();
+		if (fileSize < END_OF_CENTRAL_DIRECTORY_SIZE) {
+			return -1;
+		}
+		int length = (int) Math.min(fileSize, END_OF_CENTRAL_DIRECTORY_SIZE + MAXIMUM_COMMENT_LENGTH);
+		ByteBuffer tail = read(channel, fileSize - length, length);
+		for (int position = length - END_OF_CENTRAL_DIRECTORY_SIZE; position >= 0; position--) {
+			if (tail.getInt(position) == END_OF_CENTRAL_DIRECTORY_SIGNATURE
+					&& position + END_OF_CENTRAL_DIRECTORY_SIZE + (tail.getShort(position + 20) & 0xFFFF) == length) {
+				return fileSize - length + position;
+			}
+		}
+		return -1;
+	}
+
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) == -1) {
+				throw new EOFException();
+			}
+		}
+		((Buffer) buffer).flip();
+		return buffer;
+	}
+
+}
@@ -0,0 +1,136 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.maplecloudy.osrc.boot.loader.jar.JarFile;
+
+/**
+ * Benchmarks for reading entries of the same nested jar from several threads, as
+ * classpath scanning and template engines do during startup. Run with {@code -t} to
+ * compare throughput for different numbers of threads.
+ *
+ * @author osrc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@Threads(4)
+public class ConcurrentReadBenchmark {
+
+	private static final int ENTRIES_PER_LIBRARY = 2000;
+
+	@Param({ "false", "true" })
+	private boolean mapped;
+
+	private File directory;
+
+	private JarFile rootJarFile;
+
+	private JarFile nestedJarFile;
+
+	private ZipEntry[] entries;
+
+	@Setup
+	public void setup() throws IOException {
+		System.setProperty(JarFile.MAPPED_DATA_PROPERTY, Boolean.toString(this.mapped));
+		this.directory = Files.createTempDirectory("loader-benchmark").toFile();
+		File jar = SyntheticFatJar.create(this.directory, 10, ENTRIES_PER_LIBRARY, false);
+		this.rootJarFile = new JarFile(jar);
+		ZipEntry nestedEntry = this.rootJarFile.getEntry(SyntheticFatJar.getLibraryName(5));
+		this.nestedJarFile = this.rootJarFile.getNestedJarFile(nestedEntry);
+		this.entries = new ZipEntry[ENTRIES_PER_LIBRARY];
+		for (int i = 0; i < ENTRIES_PER_LIBRARY; i++) {
+			this.entries[i] = this.nestedJarFile.getEntry(SyntheticFatJar.getEntryName(5, i));
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		this.nestedJarFile.close();
+		this.rootJarFile.close();
+		SyntheticFatJar.delete(this.directory);
+		System.clearProperty(JarFile.MAPPED_DATA_PROPERTY);
+	}
+
+	@Benchmark
+	public int readEntry(ThreadIndex index) throws IOException {
+		return read(this.nestedJarFile.getInputStream(this.entries[index.next()]));
+	}
+
+	@Benchmark
+	public int openNestedJarAndReadEntry(ThreadIndex index) throws IOException {
+		ZipEntry entry = this.rootJarFile.getEntry(SyntheticFatJar.getLibraryName(index.next() % 10));
+		try (JarFile jarFile = this.rootJarFile.getNestedJarFile(entry)) {
+			return read(jarFile.getInputStream(jarFile.getEntry("META-INF/MANIFEST.MF")));
+		}
+	}
+
+	private int read(InputStream inputStream) throws IOException {
+		try (InputStream stream = inputStream) {
+			byte[] buffer = new byte[4096];
+			int total = 0;
+			int read;
+			while ((read = stream.read(buffer)) != -1) {
+				total += read;
+			}
+			return total;
+		}
+	}
+
+	/**
+	 * Per-thread position in the entries that are read.
+	 */
+	@State(Scope.Thread)
+	public static class ThreadIndex {
+
+		private int next;
+
+		int next() {
+			int index = this.next++;
+			if (this.next == ENTRIES_PER_LIBRARY) {
+				this.next = 0;
+			}
+			return index;
+		}
+
+	}
+
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.maplecloudy.osrc.boot.loader.jar.Handler;
+import com.maplecloudy.osrc.boot.loader.jar.JarFile;
+
+/**
+ * Benchmarks for parsing {@code jar:} URLs with the loader {@link Handler} and opening
+ * connections to the entries they address.
+ *
+ * @author osrc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class HandlerBenchmark {
+
+	private static final String ENTRY_NAME = SyntheticFatJar.getEntryName(0, 0);
+
+	private File directory;
+
+	private JarFile rootJarFile;
+
+	private JarFile nestedJarFile;
+
+	private Handler handler;
+
+	private URL nestedJarUrl;
+
+	private String absoluteSpec;
+
+	@Setup
+	public void setup() throws IOException {
+		this.directory = Files.createTempDirectory("loader-benchmark").toFile();
+		File jar = SyntheticFatJar.create(this.directory, 1, 10, false);
+		this.rootJarFile = new JarFile(jar);
+		this.nestedJarFile = this.rootJarFile
+				.getNestedJarFile(this.rootJarFile.getEntry(SyntheticFatJar.getLibraryName(0)));
+		this.handler = new Handler(this.rootJarFile);
+		this.nestedJarUrl = this.nestedJarFile.getUrl();
+		this.absoluteSpec = this.nestedJarUrl + ENTRY_NAME;
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		this.nestedJarFile.close();
+		this.rootJarFile.close();
+		SyntheticFatJar.delete(this.directory);
+	}
+
+	@Benchmark
+	public URL parseAbsoluteUrl() throws MalformedURLException {
+		return new URL(null, this.absoluteSpec, this.handler);
+	}
+
+	@Benchmark
+	public URL parseRelativeUrl() throws MalformedURLException {
+		return new URL(this.nestedJarUrl, ENTRY_NAME);
+	}
+
+	@Benchmark
+	public int hashCodeOfUrl() throws MalformedURLException {
+		return new URL(this.nestedJarUrl, ENTRY_NAME).hashCode();
+	}
+
+	@Benchmark
+	public int openUrlStream() throws IOException {
+		try (InputStream inputStream = new URL(this.nestedJarUrl, ENTRY_NAME).openStream()) {
+			return inputStream.read();
+		}
+	}
+
+}
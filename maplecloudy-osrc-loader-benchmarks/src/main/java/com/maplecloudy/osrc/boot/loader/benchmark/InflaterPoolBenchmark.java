@@ -0,0 +1,109 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.maplecloudy.osrc.boot.loader.JarLauncher;
+import com.maplecloudy.osrc.boot.loader.archive.JarFileArchive;
+import com.maplecloudy.osrc.boot.loader.benchmark.JarLauncherBenchmark.BenchmarkJarLauncher;
+
+/**
+ * Benchmarks a {@link JarLauncher} startup that reads compressed resources from every
+ * nested library, with and without pooled inflaters. Run with {@code -prof gc} to
+ * compare the allocation rate per startup.
+ *
+ * @author osrc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InflaterPoolBenchmark {
+
+	private static final String POOL_SIZE_PROPERTY = "loader.inflater.pool.size";
+
+	private static final int LIBRARIES = 50;
+
+	private static final int ENTRIES_PER_LIBRARY = 200;
+
+	@Param({ "0", "16" })
+	private int poolSize;
+
+	@Param({ "100" })
+	private int readsPerLibrary;
+
+	private File directory;
+
+	private File jar;
+
+	private String[] args;
+
+	@Setup
+	public void setup() throws IOException {
+		// Each parameter combination runs in its own fork, before the pool is created
+		System.setProperty(POOL_SIZE_PROPERTY, String.valueOf(this.poolSize));
+		this.directory = Files.createTempDirectory("loader-benchmark").toFile();
+		this.jar = SyntheticFatJar.create(this.directory, LIBRARIES, ENTRIES_PER_LIBRARY, true);
+		this.args = new String[] { String.valueOf(LIBRARIES), String.valueOf(ENTRIES_PER_LIBRARY),
+				String.valueOf(this.readsPerLibrary) };
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		SyntheticFatJar.delete(this.directory);
+		System.clearProperty(POOL_SIZE_PROPERTY);
+	}
+
+	@Benchmark
+	public int launchAndReadResources() throws Exception {
+		ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+		JarFileArchive archive = new JarFileArchive(this.jar);
+		try {
+			new BenchmarkJarLauncher(archive).launch(this.args);
+			return StartupMain.found;
+		}
+		finally {
+			ClassLoader launchedClassLoader = Thread.currentThread().getContextClassLoader();
+			Thread.currentThread().setContextClassLoader(contextClassLoader);
+			if (launchedClassLoader instanceof URLClassLoader && launchedClassLoader != contextClassLoader) {
+				((URLClassLoader) launchedClassLoader).close();
+			}
+			archive.close();
+		}
+	}
+
+}
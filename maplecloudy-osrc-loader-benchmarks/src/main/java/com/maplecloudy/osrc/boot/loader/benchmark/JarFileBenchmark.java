@@ -0,0 +1,130 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.ZipEntry;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.maplecloudy.osrc.boot.loader.jar.JarFile;
+
+/**
+ * Benchmarks for {@link JarFile}: central directory parsing of the root jar, opening
+ * nested jars and looking up entries by name.
+ *
+ * @author osrc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JarFileBenchmark {
+
+	@Param({ "50", "300" })
+	private int libraries;
+
+	@Param({ "200", "2000" })
+	private int entriesPerLibrary;
+
+	private File directory;
+
+	private File jar;
+
+	private JarFile rootJarFile;
+
+	private ZipEntry nestedEntry;
+
+	private JarFile nestedJarFile;
+
+	private String[] names;
+
+	private String[] missingNames;
+
+	private int next;
+
+	@Setup
+	public void setup() throws IOException {
+		this.directory = Files.createTempDirectory("loader-benchmark").toFile();
+		this.jar = SyntheticFatJar.create(this.directory, this.libraries, this.entriesPerLibrary, false);
+		this.rootJarFile = new JarFile(this.jar);
+		this.nestedEntry = this.rootJarFile.getEntry(SyntheticFatJar.getLibraryName(this.libraries / 2));
+		this.nestedJarFile = this.rootJarFile.getNestedJarFile(this.nestedEntry);
+		this.names = new String[this.entriesPerLibrary];
+		this.missingNames = new String[this.entriesPerLibrary];
+		for (int i = 0; i < this.entriesPerLibrary; i++) {
+			this.names[i] = SyntheticFatJar.getEntryName(this.libraries / 2, i);
+			this.missingNames[i] = SyntheticFatJar.getEntryName(this.libraries, i);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		this.nestedJarFile.close();
+		this.rootJarFile.close();
+		SyntheticFatJar.delete(this.directory);
+	}
+
+	@Benchmark
+	public int parseCentralDirectory() throws IOException {
+		try (JarFile jarFile = new JarFile(this.jar)) {
+			return jarFile.size();
+		}
+	}
+
+	@Benchmark
+	public int openNestedJar() throws IOException {
+		try (JarFile jarFile = this.rootJarFile.getNestedJarFile(this.nestedEntry)) {
+			return jarFile.size();
+		}
+	}
+
+	@Benchmark
+	public ZipEntry getEntry() {
+		return this.nestedJarFile.getEntry(this.names[nextIndex()]);
+	}
+
+	@Benchmark
+	public ZipEntry getMissingEntry() {
+		return this.nestedJarFile.getEntry(this.missingNames[nextIndex()]);
+	}
+
+	private int nextIndex() {
+		int index = this.next++;
+		if (this.next == this.entriesPerLibrary) {
+			this.next = 0;
+		}
+		return index;
+	}
+
+}
@@ -0,0 +1,123 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.maplecloudy.osrc.boot.loader.JarLauncher;
+import com.maplecloudy.osrc.boot.loader.archive.Archive;
+import com.maplecloudy.osrc.boot.loader.archive.JarFileArchive;
+
+/**
+ * Benchmarks a full {@link JarLauncher} startup: opening the root archive, creating the
+ * class loader for the nested libraries and running a main class that looks up a
+ * resource from every library.
+ *
+ * @author osrc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class JarLauncherBenchmark {
+
+	@Param({ "50", "300" })
+	private int libraries;
+
+	@Param({ "200" })
+	private int entriesPerLibrary;
+
+	@Param({ "false", "true" })
+	private boolean packagesIndex;
+
+	private File directory;
+
+	private File jar;
+
+	private String[] args;
+
+	@Setup
+	public void setup() throws IOException {
+		this.directory = Files.createTempDirectory("loader-benchmark").toFile();
+		this.jar = SyntheticFatJar.create(this.directory, this.libraries, this.entriesPerLibrary,
+				this.packagesIndex);
+		this.args = new String[] { String.valueOf(this.libraries), String.valueOf(this.entriesPerLibrary) };
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		SyntheticFatJar.delete(this.directory);
+	}
+
+	@Benchmark
+	public int launch() throws Exception {
+		ClassLoader contextClassLoader = Thread.currentThread().getContextClassLoader();
+		JarFileArchive archive = new JarFileArchive(this.jar);
+		try {
+			new BenchmarkJarLauncher(archive).launch(this.args);
+			return StartupMain.found;
+		}
+		finally {
+			ClassLoader launchedClassLoader = Thread.currentThread().getContextClassLoader();
+			Thread.currentThread().setContextClassLoader(contextClassLoader);
+			if (launchedClassLoader instanceof URLClassLoader && launchedClassLoader != contextClassLoader) {
+				((URLClassLoader) launchedClassLoader).close();
+			}
+			archive.close();
+		}
+	}
+
+	/**
+	 * {@link JarLauncher} for a specific archive.
+	 */
+	static class BenchmarkJarLauncher extends JarLauncher {
+
+		BenchmarkJarLauncher(Archive archive) {
+			super(archive);
+		}
+
+		@Override
+		protected void launch(String[] args) throws Exception {
+			super.launch(args);
+		}
+
+		ClassLoader createClassLoader() throws Exception {
+			return createClassLoader(getClassPathArchivesIterator());
+		}
+
+	}
+
+}
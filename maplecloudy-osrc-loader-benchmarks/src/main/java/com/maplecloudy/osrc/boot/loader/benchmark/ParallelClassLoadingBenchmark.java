@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.benchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.maplecloudy.osrc.boot.loader.LaunchedURLClassLoader;
+import com.maplecloudy.osrc.boot.loader.archive.JarFileArchive;
+import com.maplecloudy.osrc.boot.loader.jar.JarFile;
+
+/**
+ * Benchmarks defining classes from the nested libraries of a fat jar with several
+ * threads, as application startup does when beans are created in parallel. Each
+ * invocation uses a new {@link LaunchedURLClassLoader} so that every class, and the
+ * package that contains it, is defined again. The threads interleave over the classes of
+ * every library so that they define classes of the same packages at the same time.
+ *
+ * @author osrc
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ParallelClassLoadingBenchmark {
+
+	@Param({ "300" })
+	private int libraries;
+
+	@Param({ "20" })
+	private int classesPerLibrary;
+
+	@Param({ "1", "4" })
+	private int threads;
+
+	@Param({ "true" })
+	private boolean packagesIndex;
+
+	private File directory;
+
+	private File jar;
+
+	private ExecutorService executor;
+
+	private JarFileArchive archive;
+
+	private URLClassLoader classLoader;
+
+	@Setup
+	public void setup() throws IOException {
+		JarFile.registerUrlProtocolHandler();
+		this.directory = Files.createTempDirectory("loader-benchmark").toFile();
+		this.jar = SyntheticFatJar.create(this.directory, this.libraries, this.classesPerLibrary,
+				this.packagesIndex);
+		this.executor = Executors.newFixedThreadPool(this.threads);
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		this.executor.shutdownNow();
+		SyntheticFatJar.delete(this.directory);
+	}
+
+	@Setup(Level.Invocation)
+	public void createClassLoader() throws Exception {
+		this.archive = new JarFileArchive(this.jar);
+		this.classLoader = (URLClassLoader) new JarLauncherBenchmark.BenchmarkJarLauncher(this.archive)
+				.createClassLoader();
+	}
+
+	@TearDown(Level.Invocation)
+	public void closeClassLoader() throws IOException {
+		this.classLoader.close();
+		this.archive.close();
+	}
+
+	@Benchmark
+	public int loadClasses() throws Exception {
+		List<Future<Integer>> results = new ArrayList<>(this.threads);
+		for (int thread = 0; thread < this.threads; thread++) {
+			int first = thread;
+			results.add(this.executor.submit(() -> loadClasses(first)));
+		}
+		int loaded = 0;
+		for (Future<Integer> result : results) {
+			loaded += result.get();
+		}
+		if (loaded != this.libraries * this.classesPerLibrary) {
+			throw new IllegalStateException("Loaded " + loaded + " classes");
+		}
+		return loaded;
+	}
+
+	private int loadClasses(int first) throws ClassNotFoundException {
+		int loaded = 0;
+		for (int library = 0; library < this.libraries; library++) {
+			for (int entry = first; entry < this.classesPerLibrary; entry += this.threads) {
+				Class<?> type = Class.forName(SyntheticFatJar.getClassName(library, entry), false,
+						this.classLoader);
+				if (type.getPackage() != null) {
+					loaded++;
+				}
+			}
+		}
+		return loaded;
+	}
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.benchmark;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+
+/**
+ * Application main class launched by the {@link JarLauncherBenchmark}. Looks up one
+ * resource from each nested library of the {@link SyntheticFatJar}, which is similar to
+ * the work done by classpath scanning during application startup. An optional third
+ * argument gives the number of resources to read from each library, as class loading
+ * does.
+ *
+ * @author osrc
+ */
+public final class StartupMain {
+
+	static volatile int found;
+
+	private StartupMain() {
+	}
+
+	public static void main(String[] args) throws IOException {
+		int libraries = Integer.parseInt(args[0]);
+		int entriesPerLibrary = Integer.parseInt(args[1]);
+		int readsPerLibrary = (args.length > 2) ? Integer.parseInt(args[2]) : 0;
+		ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+		int count = 0;
+		byte[] buffer = new byte[4096];
+		for (int library = 0; library < libraries; library++) {
+			URL resource = classLoader.getResource(SyntheticFatJar.getEntryName(library, entriesPerLibrary - 1));
+			if (resource != null) {
+				count++;
+			}
+			for (int entry = 0; entry < readsPerLibrary; entry++) {
+				try (InputStream inputStream = classLoader
+						.getResourceAsStream(SyntheticFatJar.getEntryName(library, entry))) {
+					while (inputStream.read(buffer) != -1) {
+						count++;
+					}
+				}
+			}
+		}
+		found = count;
+	}
+
+}
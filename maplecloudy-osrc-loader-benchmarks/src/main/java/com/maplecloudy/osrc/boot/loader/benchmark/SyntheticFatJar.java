@@ -0,0 +1,228 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.benchmark;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+/**
+ * Creates fat jars with the same layout as a repackaged application, containing a
+ * configurable number of synthetic nested libraries. Each entry of a library is a minimal
+ * but valid class file so that it can be defined by a class loader.
+ *
+ * @author osrc
+ */
+final class SyntheticFatJar {
+
+	private static final String LIB_LOCATION = "BOOT-INF/lib/";
+
+	private static final String PACKAGES_INDEX_LOCATION = "BOOT-INF/packages.idx";
+
+	private static final int PACKAGES_PER_LIBRARY = 10;
+
+	private static final int CLASS_FILE_MAGIC = 0xCAFEBABE;
+
+	private static final int JAVA_8_MAJOR_VERSION = 52;
+
+	private static final int CONSTANT_UTF8 = 1;
+
+	private static final int CONSTANT_CLASS = 7;
+
+	private static final int ACC_PUBLIC_SUPER = 0x0021;
+
+	private SyntheticFatJar() {
+	}
+
+	/**
+	 * Create a fat jar in the given directory.
+	 * @param directory the destination directory
+	 * @param libraries the number of nested libraries
+	 * @param entriesPerLibrary the number of entries in each nested library
+	 * @param packagesIndex if a packages index should be written
+	 * @return the fat jar file
+	 * @throws IOException on IO error
+	 */
+	static File create(File directory, int libraries, int entriesPerLibrary, boolean packagesIndex)
+			throws IOException {
+		File file = new File(directory, "synthetic-" + libraries + "-" + entriesPerLibrary + ".jar");
+		StringBuilder index = new StringBuilder();
+		try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file), getManifest())) {
+			out.putNextEntry(new JarEntry("BOOT-INF/"));
+			out.putNextEntry(new JarEntry("BOOT-INF/classes/"));
+			out.putNextEntry(new JarEntry("BOOT-INF/classes/application.properties"));
+			out.write("synthetic=true\n".getBytes(StandardCharsets.UTF_8));
+			out.putNextEntry(new JarEntry(LIB_LOCATION));
+			for (int library = 0; library < libraries; library++) {
+				String name = getLibraryName(library);
+				writeStored(out, name, createLibrary(library, entriesPerLibrary));
+				index.append("- \"").append(name).append("\":\n");
+				for (String directoryName : getDirectories(library, entriesPerLibrary)) {
+					index.append("  - \"").append(directoryName).append("\"\n");
+				}
+			}
+			if (packagesIndex) {
+				out.putNextEntry(new JarEntry(PACKAGES_INDEX_LOCATION));
+				out.write(index.toString().getBytes(StandardCharsets.UTF_8));
+			}
+		}
+		return file;
+	}
+
+	private static Manifest getManifest() {
+		Manifest manifest = new Manifest();
+		Attributes attributes = manifest.getMainAttributes();
+		attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+		attributes.putValue("Main-Class", "com.maplecloudy.osrc.boot.loader.JarLauncher");
+		attributes.putValue("Service-Class", StartupMain.class.getName());
+		attributes.putValue("Osrc-Boot-Classes", "BOOT-INF/classes/");
+		attributes.putValue("Osrc-Boot-Lib", LIB_LOCATION);
+		return manifest;
+	}
+
+	private static byte[] createLibrary(int library, int entries) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (JarOutputStream out = new JarOutputStream(bytes, new Manifest())) {
+			for (String directoryName : getDirectories(library, entries)) {
+				if (!directoryName.isEmpty()) {
+					out.putNextEntry(new JarEntry(directoryName));
+				}
+			}
+			for (int entry = 0; entry < entries; entry++) {
+				String name = getEntryName(library, entry);
+				out.putNextEntry(new JarEntry(name));
+				out.write(createClass(name.substring(0, name.length() - ".class".length())));
+			}
+		}
+		return bytes.toByteArray();
+	}
+
+	private static byte[] createClass(String internalName) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeInt(CLASS_FILE_MAGIC);
+			out.writeShort(0);
+			out.writeShort(JAVA_8_MAJOR_VERSION);
+			// Constant pool: #1 this class, #2 its name, #3 super class, #4 its name
+			out.writeShort(5);
+			out.writeByte(CONSTANT_CLASS);
+			out.writeShort(2);
+			out.writeByte(CONSTANT_UTF8);
+			out.writeUTF(internalName);
+			out.writeByte(CONSTANT_CLASS);
+			out.writeShort(4);
+			out.writeByte(CONSTANT_UTF8);
+			out.writeUTF("java/lang/Object");
+			out.writeShort(ACC_PUBLIC_SUPER);
+			out.writeShort(1);
+			out.writeShort(3);
+			// No interfaces, fields, methods or attributes
+			out.writeShort(0);
+			out.writeShort(0);
+			out.writeShort(0);
+			out.writeShort(0);
+		}
+		return bytes.toByteArray();
+	}
+
+	private static TreeSet<String> getDirectories(int library, int entries) {
+		TreeSet<String> directories = new TreeSet<>();
+		directories.add("");
+		directories.add("META-INF/");
+		for (int entry = 0; entry < Math.min(entries, PACKAGES_PER_LIBRARY); entry++) {
+			String name = getEntryName(library, entry);
+			int slash = name.indexOf('/');
+			while (slash != -1) {
+				directories.add(name.substring(0, slash + 1));
+				slash = name.indexOf('/', slash + 1);
+			}
+		}
+		return directories;
+	}
+
+	private static void writeStored(JarOutputStream out, String name, byte[] content) throws IOException {
+		// Nested jars must be stored so that they can be read in place
+		JarEntry entry = new JarEntry(name);
+		CRC32 crc = new CRC32();
+		crc.update(content);
+		entry.setMethod(ZipEntry.STORED);
+		entry.setSize(content.length);
+		entry.setCompressedSize(content.length);
+		entry.setCrc(crc.getValue());
+		out.putNextEntry(entry);
+		out.write(content);
+	}
+
+	/**
+	 * Return the name of a nested library.
+	 * @param library the library number
+	 * @return the entry name of the library in the fat jar
+	 */
+	static String getLibraryName(int library) {
+		return LIB_LOCATION + "library-" + library + ".jar";
+	}
+
+	/**
+	 * Return the name of the class of an entry in a nested library.
+	 * @param library the library number
+	 * @param entry the entry number
+	 * @return the class name
+	 */
+	static String getClassName(int library, int entry) {
+		String name = getEntryName(library, entry);
+		return name.substring(0, name.length() - ".class".length()).replace('/', '.');
+	}
+
+	/**
+	 * Return the name of an entry in a nested library.
+	 * @param library the library number
+	 * @param entry the entry number
+	 * @return the entry name
+	 */
+	static String getEntryName(int library, int entry) {
+		return "com/example/library" + library + "/package" + (entry % PACKAGES_PER_LIBRARY) + "/Entry" + entry
+				+ ".class";
+	}
+
+	/**
+	 * Delete the given directory and its content.
+	 * @param directory the directory to delete
+	 * @throws IOException on IO error
+	 */
+	static void delete(File directory) throws IOException {
+		if (directory != null && directory.exists()) {
+			try (Stream<Path> paths = Files.walk(directory.toPath())) {
+				paths.sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+			}
+		}
+	}
+
+}
@@ -28,8 +28,10 @@ import java.io.*;
 import java.net.URL;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
 import java.util.function.Function;
 import java.util.jar.JarEntry;
@@ -65,6 +67,11 @@ public abstract class AbstractJarWriter implements LoaderClassesWriter {
 
   private LayersIndex layersIndex;
 
+  private Map<Library,NestedLibraryDetails> nestedLibraryDetails = Collections
+      .emptyMap();
+
+  private boolean compressNestedLibraries;
+
   /**
    * Update this writer to use specific layers.
    *
@@ -76,6 +83,39 @@ public abstract class AbstractJarWriter implements LoaderClassesWriter {
     this.layersIndex = layersIndex;
   }
 
+  /**
+   * Update this writer to compress nested libraries rather than store them.
+   *
+   * @param compressNestedLibraries if nested libraries are compressed
+   */
+  void setCompressNestedLibraries(boolean compressNestedLibraries) {
+    this.compressNestedLibraries = compressNestedLibraries;
+  }
+
+  /**
+   * Compute the details of the nested libraries that will be written using a
+   * pool of worker threads so that {@link #writeNestedLibrary(String, Library)}
+   * only has to copy their content. Details of library files that have not
+   * changed since they were recorded in the cache file are not computed again.
+   * A cache file that cannot be written is ignored.
+   *
+   * @param libraries the libraries that will be written
+   * @param threads   the number of threads to use
+   * @param cacheFile the file used to cache library details or {@code null}
+   * @throws IOException if the details cannot be computed
+   */
+  void prepareNestedLibraries(Collection<Library> libraries, int threads,
+      File cacheFile) throws IOException {
+    NestedLibraryCache cache = (cacheFile != null) ?
+        NestedLibraryCache.load(cacheFile) :
+        null;
+    this.nestedLibraryDetails = NestedLibraryDetails
+        .computeAll(libraries, threads, cache);
+    if (cache != null) {
+      cache.save();
+    }
+  }
+
   /**
    * Write the specified manifest.
    *
@@ -180,11 +220,48 @@ public abstract class AbstractJarWriter implements LoaderClassesWriter {
   public void writeNestedLibrary(String location, Library library)
       throws IOException {
     JarArchiveEntry entry = new JarArchiveEntry(location + library.getName());
-    entry.setTime(getNestedLibraryTime(library));
-    new CrcAndSize(library::openStream).setupStoredEntry(entry);
-    try (InputStream inputStream = library.openStream()) {
-      writeEntry(entry, library, new InputStreamEntryWriter(inputStream),
-          new LibraryUnpackHandler(library));
+    NestedLibraryDetails details = this.nestedLibraryDetails.get(library);
+    if (details == null) {
+      details = NestedLibraryDetails.compute(library);
+    }
+    entry.setTime(details.getTime());
+    details.setupStoredEntry(entry);
+    if (this.compressNestedLibraries) {
+      // The loader inflates compressed libraries once, on first access
+      entry.setMethod(ZipEntry.DEFLATED);
+      entry.setCompressedSize(-1);
+    }
+    if (library.getFile() != null) {
+      writeEntry(entry, library, new StoredFileEntryWriter(library.getFile()),
+          new LibraryUnpackHandler(library, details));
+    } else {
+      try (InputStream inputStream = library.openStream()) {
+        writeEntry(entry, library, new InputStreamEntryWriter(inputStream),
+            new LibraryUnpackHandler(library, details));
+      }
+    }
+    writeCentralDirectoryIndex(entry, library, details);
+  }
+
+  /**
+   * Write the precomputed central directory index for a nested library so that
+   * the loader can open it without parsing and sorting its entries.
+   *
+   * @param libraryEntry the entry of the nested library
+   * @param library      the library
+   * @param details      the details of the library
+   * @throws IOException if the write fails
+   */
+  private void writeCentralDirectoryIndex(JarArchiveEntry libraryEntry,
+      Library library, NestedLibraryDetails details) throws IOException {
+    byte[] index = details.getCentralDirectoryIndex();
+    if (index != null) {
+      JarArchiveEntry entry = new JarArchiveEntry(
+          CentralDirectoryIndex.getLocation(libraryEntry.getName()));
+      entry.setTime(libraryEntry.getTime());
+      writeEntry(entry, library,
+          new InputStreamEntryWriter(new ByteArrayInputStream(index)),
+          UnpackHandler.NEVER);
     }
   }
 
@@ -212,24 +289,6 @@ public abstract class AbstractJarWriter implements LoaderClassesWriter {
     }
   }
 
-  private long getNestedLibraryTime(Library library) {
-    try {
-      try (JarInputStream jarStream = new JarInputStream(
-          library.openStream())) {
-        JarEntry entry = jarStream.getNextJarEntry();
-        while (entry != null) {
-          if (!entry.isDirectory()) {
-            return entry.getTime();
-          }
-          entry = jarStream.getNextJarEntry();
-        }
-      }
-    } catch (Exception ex) {
-      // Ignore and just use the library timestamp
-    }
-    return library.getLastModified();
-  }
-
   /**
    * Write the required spring-boot-loader classes to the JAR.
    *
@@ -326,6 +385,10 @@ public abstract class AbstractJarWriter implements LoaderClassesWriter {
         name;
     while (parent.lastIndexOf('/') != -1) {
       parent = parent.substring(0, parent.lastIndexOf('/'));
+      if (this.writtenEntries.contains(parent + "/")) {
+        // Directories are written after their own parents
+        break;
+      }
       if (!parent.isEmpty()) {
         writeEntry(new JarArchiveEntry(parent + "/"), null, null,
             UnpackHandler.NEVER);
@@ -335,14 +398,11 @@ public abstract class AbstractJarWriter implements LoaderClassesWriter {
 
   private EntryWriter addUnpackCommentIfNecessary(JarArchiveEntry entry,
       EntryWriter entryWriter, UnpackHandler unpackHandler) throws IOException {
-    if (entryWriter == null || !unpackHandler.requiresUnpack(entry.getName())) {
-      return entryWriter;
+    if (entryWriter != null && unpackHandler.requiresUnpack(entry.getName())) {
+      // The hash is read from the source, so the content is not buffered
+      entry.setComment("UNPACK:" + unpackHandler.sha1Hash(entry.getName()));
     }
-    ByteArrayOutputStream output = new ByteArrayOutputStream();
-    entryWriter.write(output);
-    entry.setComment("UNPACK:" + unpackHandler.sha1Hash(entry.getName()));
-    return new InputStreamEntryWriter(
-        new ByteArrayInputStream(output.toByteArray()));
+    return entryWriter;
   }
 
   /**
@@ -368,6 +428,32 @@ public abstract class AbstractJarWriter implements LoaderClassesWriter {
 
   }
 
+  /**
+   * {@link EntryWriter} for a file whose CRC and size have already been set on
+   * its stored entry. Writers that can copy raw entry data read the file
+   * directly using {@link #openStream()} so that its CRC is not computed again.
+   */
+  static final class StoredFileEntryWriter implements EntryWriter {
+
+    private final File file;
+
+    StoredFileEntryWriter(File file) {
+      this.file = file;
+    }
+
+    InputStream openStream() throws IOException {
+      return new FileInputStream(this.file);
+    }
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+      try (InputStream inputStream = openStream()) {
+        new InputStreamEntryWriter(inputStream).write(outputStream);
+      }
+    }
+
+  }
+
   /**
    * Data holder for CRC and Size.
    */
@@ -377,12 +463,6 @@ public abstract class AbstractJarWriter implements LoaderClassesWriter {
 
     private long size;
 
-    CrcAndSize(InputStreamSupplier supplier) throws IOException {
-      try (InputStream inputStream = supplier.openStream()) {
-        load(inputStream);
-      }
-    }
-
     CrcAndSize(InputStream inputStream) throws IOException {
       load(inputStream);
     }
@@ -454,8 +534,12 @@ public abstract class AbstractJarWriter implements LoaderClassesWriter {
 
     private final Library library;
 
-    private LibraryUnpackHandler(Library library) {
+    private final NestedLibraryDetails details;
+
+    private LibraryUnpackHandler(Library library,
+        NestedLibraryDetails details) {
       this.library = library;
+      this.details = details;
     }
 
     @Override
@@ -465,7 +549,8 @@ public abstract class AbstractJarWriter implements LoaderClassesWriter {
 
     @Override
     public String sha1Hash(String name) throws IOException {
-      return Digest.sha1(this.library::openStream);
+      String sha1 = this.details.getSha1();
+      return (sha1 != null) ? sha1 : Digest.sha1(this.library::openStream);
     }
 
   }
@@ -0,0 +1,209 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.tools;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Generates the precomputed central directory index that the loader uses to open nested
+ * jars without parsing and sorting their entries. The binary format must be kept in sync
+ * with {@code com.maplecloudy.osrc.boot.loader.jar.CentralDirectoryIndex}.
+ *
+ * @author osrc
+ */
+final class CentralDirectoryIndex {
+
+	private static final String LOCATION = "META-INF/osrc/entries/";
+
+	private static final String EXTENSION = ".idx";
+
+	private static final int SIGNATURE = 0x4f534549;
+
+	private static final int VERSION = 1;
+
+	private static final int SIGNED_FLAG = 0x01;
+
+	private static final int END_RECORD_SIGNATURE = 0x06054b50;
+
+	private static final int ZIP64_LOCATOR_SIGNATURE = 0x07064b50;
+
+	private static final int END_RECORD_MINIMUM_SIZE = 22;
+
+	private static final int MAXIMUM_COMMENT_LENGTH = 0xFFFF;
+
+	private static final int FILE_HEADER_SIGNATURE = 0x02014b50;
+
+	private static final int FILE_HEADER_BASE_SIZE = 46;
+
+	private CentralDirectoryIndex() {
+	}
+
+	/**
+	 * Return the name of the entry that holds the index for the given nested jar entry.
+	 * @param nestedJarName the name of the nested jar entry
+	 * @return the index entry name
+	 */
+	static String getLocation(String nestedJarName) {
+		return LOCATION + nestedJarName + EXTENSION;
+	}
+
+	/**
+	 * Generate the index for the given jar file.
+	 * @param file the nested jar file
+	 * @param crc the CRC of the nested jar file
+	 * @return the index bytes or {@code null} if the file cannot be indexed (for example
+	 * if it is a zip64 archive)
+	 * @throws IOException on IO error
+	 */
+	static byte[] generate(File file, long crc) throws IOException {
+		try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r")) {
+			byte[] centralDirectory = readCentralDirectory(randomAccessFile);
+			return (centralDirectory != null) ? generate(centralDirectory, crc) : null;
+		}
+	}
+
+	private static byte[] readCentralDirectory(RandomAccessFile file) throws IOException {
+		long length = file.length();
+		int tailLength = (int) Math.min(length, END_RECORD_MINIMUM_SIZE + MAXIMUM_COMMENT_LENGTH);
+		byte[] tail = new byte[tailLength];
+		file.seek(length - tailLength);
+		file.readFully(tail);
+		int endRecord = findEndRecord(tail);
+		if (endRecord == -1) {
+			return null;
+		}
+		long endRecordPosition = length - tailLength + endRecord;
+		int numberOfRecords = (int) littleEndianValue(tail, endRecord + 10, 2);
+		long size = littleEndianValue(tail, endRecord + 12, 4);
+		long offset = littleEndianValue(tail, endRecord + 16, 4);
+		boolean zip64 = numberOfRecords == 0xFFFF || size == 0xFFFFFFFFL || offset == 0xFFFFFFFFL
+				|| (endRecord >= 20 && littleEndianValue(tail, endRecord - 20, 4) == ZIP64_LOCATOR_SIGNATURE);
+		if (zip64 || size > endRecordPosition) {
+			return null;
+		}
+		// Read relative to the end record so that any prefix bytes are accounted for
+		byte[] centralDirectory = new byte[(int) size];
+		file.seek(endRecordPosition - size);
+		file.readFully(centralDirectory);
+		return centralDirectory;
+	}
+
+	private static int findEndRecord(byte[] tail) {
+		for (int offset = tail.length - END_RECORD_MINIMUM_SIZE; offset >= 0; offset--) {
+			if (littleEndianValue(tail, offset, 4) == END_RECORD_SIGNATURE) {
+				long commentLength = littleEndianValue(tail, offset + 20, 2);
+				if (offset + END_RECORD_MINIMUM_SIZE + commentLength == tail.length) {
+					return offset;
+				}
+			}
+		}
+		return -1;
+	}
+
+	private static byte[] generate(byte[] centralDirectory, long crc) throws IOException {
+		int capacity = centralDirectory.length / FILE_HEADER_BASE_SIZE;
+		int[] hashCodes = new int[capacity];
+		int[] offsets = new int[capacity];
+		CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+		boolean signed = false;
+		int size = 0;
+		int offset = 0;
+		while (offset + FILE_HEADER_BASE_SIZE <= centralDirectory.length) {
+			if (littleEndianValue(centralDirectory, offset, 4) != FILE_HEADER_SIGNATURE) {
+				return null;
+			}
+			int nameLength = (int) littleEndianValue(centralDirectory, offset + 28, 2);
+			int extraLength = (int) littleEndianValue(centralDirectory, offset + 30, 2);
+			int commentLength = (int) littleEndianValue(centralDirectory, offset + 32, 2);
+			String name = decode(decoder, centralDirectory, offset + FILE_HEADER_BASE_SIZE, nameLength);
+			if (name == null) {
+				return null;
+			}
+			// The loader's AsciiBytes hash codes are compatible with String for valid UTF-8
+			hashCodes[size] = name.hashCode();
+			offsets[size] = offset;
+			signed = signed || (name.startsWith("META-INF/") && name.endsWith(".SF"));
+			size++;
+			offset += FILE_HEADER_BASE_SIZE + nameLength + extraLength + commentLength;
+		}
+		return write(size, signed, Arrays.copyOf(hashCodes, size), Arrays.copyOf(offsets, size), crc);
+	}
+
+	private static byte[] write(int size, boolean signed, int[] hashCodes, int[] offsets, long crc)
+			throws IOException {
+		// Sort by hash code, tracking where each original entry ended up
+		Integer[] order = new Integer[size];
+		for (int i = 0; i < size; i++) {
+			order[i] = i;
+		}
+		Arrays.sort(order, Comparator.comparingInt((index) -> hashCodes[index]));
+		int[] positions = new int[size];
+		for (int i = 0; i < size; i++) {
+			positions[order[i]] = i;
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(20 + 12 * size);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(SIGNATURE);
+		out.writeInt(VERSION);
+		out.writeInt((int) crc);
+		out.writeInt(size);
+		out.writeInt(size);
+		out.writeByte(signed ? SIGNED_FLAG : 0);
+		for (int i = 0; i < size; i++) {
+			out.writeInt(hashCodes[order[i]]);
+		}
+		for (int i = 0; i < size; i++) {
+			out.writeInt(offsets[order[i]]);
+		}
+		for (int i = 0; i < size; i++) {
+			out.writeInt(positions[i]);
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	private static String decode(CharsetDecoder decoder, byte[] bytes, int offset, int length) {
+		if (offset + length > bytes.length) {
+			return null;
+		}
+		try {
+			return decoder.decode(ByteBuffer.wrap(bytes, offset, length)).toString();
+		}
+		catch (CharacterCodingException ex) {
+			return null;
+		}
+	}
+
+	private static long littleEndianValue(byte[] bytes, int offset, int length) {
+		long value = 0;
+		for (int i = length - 1; i >= 0; i--) {
+			value = ((value << 8) | (bytes[offset + i] & 0xFF));
+		}
+		return value;
+	}
+
+}
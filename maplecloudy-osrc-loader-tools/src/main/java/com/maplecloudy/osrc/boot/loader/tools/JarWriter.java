@@ -20,6 +20,7 @@ import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.nio.file.attribute.FileTime;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipException;
@@ -27,6 +28,8 @@ import java.util.zip.ZipException;
 import org.apache.commons.compress.archivers.jar.JarArchiveEntry;
 import org.apache.commons.compress.archivers.jar.JarArchiveOutputStream;
 
+import com.maplecloudy.osrc.boot.loader.tools.AbstractJarWriter.StoredFileEntryWriter;
+
 /**
  * Writes JAR content, ensuring valid directory entries are always created and duplicate
  * items are ignored.
@@ -43,6 +46,8 @@ public class JarWriter extends AbstractJarWriter implements AutoCloseable {
 
 	private final FileTime lastModifiedTime;
 
+	private PreviousArchive previousArchive;
+
 	/**
 	 * Create a new {@link JarWriter} instance.
 	 * @param file the file to write
@@ -85,12 +90,35 @@ public class JarWriter extends AbstractJarWriter implements AutoCloseable {
 		this.lastModifiedTime = lastModifiedTime;
 	}
 
+	/**
+	 * Reuse the compressed data of unchanged entries from the given previous archive.
+	 * @param previousArchive the previous archive or {@code null}
+	 */
+	void setPreviousArchive(PreviousArchive previousArchive) {
+		this.previousArchive = previousArchive;
+	}
+
 	@Override
 	protected void writeToArchive(ZipEntry entry, EntryWriter entryWriter) throws IOException {
 		JarArchiveEntry jarEntry = asJarArchiveEntry(entry);
 		if (this.lastModifiedTime != null) {
 			jarEntry.setLastModifiedTime(this.lastModifiedTime);
 		}
+		if (entryWriter instanceof StoredFileEntryWriter && isStoredWithKnownCrc(jarEntry)) {
+			// Copied as raw data, the CRC and size are already in the entry
+			try (InputStream inputStream = ((StoredFileEntryWriter) entryWriter).openStream()) {
+				this.jarOutputStream.addRawArchiveEntry(jarEntry, inputStream);
+			}
+			return;
+		}
+		InputStream previousData = (this.previousArchive != null && entryWriter != null)
+				? this.previousArchive.getRawInputStream(jarEntry) : null;
+		if (previousData != null) {
+			try (InputStream inputStream = previousData) {
+				this.jarOutputStream.addRawArchiveEntry(jarEntry, inputStream);
+			}
+			return;
+		}
 		this.jarOutputStream.putArchiveEntry(jarEntry);
 		if (entryWriter != null) {
 			entryWriter.write(this.jarOutputStream);
@@ -98,6 +126,11 @@ public class JarWriter extends AbstractJarWriter implements AutoCloseable {
 		this.jarOutputStream.closeArchiveEntry();
 	}
 
+	private boolean isStoredWithKnownCrc(JarArchiveEntry entry) {
+		return entry.getMethod() == ZipEntry.STORED && entry.getCrc() != -1 && entry.getSize() != -1
+				&& entry.getCompressedSize() == entry.getSize();
+	}
+
 	private JarArchiveEntry asJarArchiveEntry(ZipEntry entry) throws ZipException {
 		if (entry instanceof JarArchiveEntry) {
 			return (JarArchiveEntry) entry;
@@ -72,6 +72,17 @@ public interface Layout {
 		return null;
 	}
 
+	/**
+	 * Returns the location of the packages index file that should be written or
+	 * {@code null} if not index is required. The result should include the filename and
+	 * is relative to the root of the jar.
+	 * @return the packages index file location
+	 * @see PackagesIndex
+	 */
+	default String getPackagesIndexFileLocation() {
+		return null;
+	}
+
 	/**
 	 * Returns if loader classes should be included to make the archive executable.
 	 * @return if the layout is executable
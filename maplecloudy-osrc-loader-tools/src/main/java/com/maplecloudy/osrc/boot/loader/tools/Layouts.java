@@ -93,6 +93,11 @@ public final class Layouts {
 			return "BOOT-INF/layers.idx";
 		}
 
+		@Override
+		public String getPackagesIndexFileLocation() {
+			return "BOOT-INF/packages.idx";
+		}
+
 		@Override
 		public boolean isExecutable() {
 			return true;
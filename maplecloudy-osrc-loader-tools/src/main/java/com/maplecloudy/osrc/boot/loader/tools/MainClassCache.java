@@ -0,0 +1,192 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.ZipEntry;
+
+/**
+ * Persisted results of a {@link MainClassFinder} search so that a later search of the
+ * same archive only parses the classes that changed. Classes are identified by the CRC
+ * and size recorded for their entry in the archive, so unchanged classes are not read at
+ * all. Each line of the cache file holds the CRC, size and name of a class entry, a flag
+ * for a {@code main} method and the annotation names of classes with a {@code main}
+ * method, separated by tabs.
+ *
+ * @author osrc
+ */
+final class MainClassCache {
+
+	private static final String HEADER = "# main classes v1";
+
+	private final File file;
+
+	private final Map<String, Record> previous;
+
+	private final Map<String, Record> current = new ConcurrentHashMap<>();
+
+	private MainClassCache(File file, Map<String, Record> previous) {
+		this.file = file;
+		this.previous = previous;
+	}
+
+	/**
+	 * Return the cached result for the given class entry.
+	 * @param entry the class entry
+	 * @return the result or {@code null} if the entry is not cached or has changed
+	 */
+	Record get(ZipEntry entry) {
+		Record record = this.previous.get(entry.getName());
+		if (record != null && entry.getCrc() != -1 && record.crc == entry.getCrc()
+				&& record.size == entry.getSize()) {
+			this.current.put(entry.getName(), record);
+			return record;
+		}
+		return null;
+	}
+
+	/**
+	 * Record the result for the given class entry.
+	 * @param entry the class entry
+	 * @param mainMethodFound if the class has a {@code main} method
+	 * @param annotationNames the annotation names of the class
+	 */
+	void put(ZipEntry entry, boolean mainMethodFound, Set<String> annotationNames) {
+		if (entry.getCrc() != -1) {
+			this.current.put(entry.getName(), new Record(entry.getCrc(), entry.getSize(), mainMethodFound,
+					mainMethodFound ? annotationNames : Collections.emptySet()));
+		}
+	}
+
+	/**
+	 * Save the recorded results, replacing the previous content of the cache. A cache
+	 * that cannot be written is ignored, the next search parses every class instead.
+	 */
+	void save() {
+		try {
+			write();
+		}
+		catch (IOException | RuntimeException ex) {
+			// Parse every class next time
+		}
+	}
+
+	private void write() throws IOException {
+		File directory = this.file.getAbsoluteFile().getParentFile();
+		if (!directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Unable to create directory " + directory);
+		}
+		// Write to a temp file first so that a failed write never leaves a truncated cache
+		Path temp = Files.createTempFile(directory.toPath(), this.file.getName(), ".tmp");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				writer.write(HEADER + "\n");
+				for (Map.Entry<String, Record> entry : new TreeMap<>(this.current).entrySet()) {
+					Record record = entry.getValue();
+					writer.write(Long.toHexString(record.crc) + "\t" + record.size + "\t"
+							+ (record.mainMethodFound ? "1" : "0") + "\t" + entry.getKey() + "\t"
+							+ String.join(",", record.annotationNames) + "\n");
+				}
+			}
+			try {
+				Files.move(temp, this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException ex) {
+				Files.move(temp, this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Load the cache from the given file, ignoring a file that cannot be read.
+	 * @param file the cache file
+	 * @return the cache
+	 */
+	static MainClassCache load(File file) {
+		Map<String, Record> previous = new ConcurrentHashMap<>();
+		if (file.isFile()) {
+			try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+				if (HEADER.equals(reader.readLine())) {
+					String line = reader.readLine();
+					while (line != null) {
+						String[] fields = line.split("\t", -1);
+						Set<String> annotationNames = fields[4].isEmpty() ? Collections.emptySet()
+								: new LinkedHashSet<>(Arrays.asList(fields[4].split(",")));
+						previous.put(fields[3], new Record(Long.parseLong(fields[0], 16), Long.parseLong(fields[1]),
+								"1".equals(fields[2]), annotationNames));
+						line = reader.readLine();
+					}
+				}
+			}
+			catch (IOException | RuntimeException ex) {
+				// Parse every class instead
+				previous.clear();
+			}
+		}
+		return new MainClassCache(file, previous);
+	}
+
+	/**
+	 * The recorded result for a class entry.
+	 */
+	static final class Record {
+
+		private final long crc;
+
+		private final long size;
+
+		private final boolean mainMethodFound;
+
+		private final Set<String> annotationNames;
+
+		Record(long crc, long size, boolean mainMethodFound, Set<String> annotationNames) {
+			this.crc = crc;
+			this.size = size;
+			this.mainMethodFound = mainMethodFound;
+			this.annotationNames = annotationNames;
+		}
+
+		boolean isMainMethodFound() {
+			return this.mainMethodFound;
+		}
+
+		Set<String> getAnnotationNames() {
+			return this.annotationNames;
+		}
+
+	}
+
+}
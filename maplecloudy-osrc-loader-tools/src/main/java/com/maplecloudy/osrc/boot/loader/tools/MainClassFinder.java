@@ -19,13 +19,17 @@ package com.maplecloudy.osrc.boot.loader.tools;
 import org.springframework.asm.*;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
+import java.util.stream.Collectors;
 
 /**
  * Finds any class with a {@code public static main} method by performing a
- * breadth first search.
+ * breadth first search. Classes whose constant pool cannot contain a
+ * {@code main} method are skipped without being parsed, and the classes of a
+ * jar are parsed in parallel.
  *
  * @author Phillip Webb
  * @author Andy Wilkinson
@@ -42,6 +46,14 @@ public abstract class MainClassFinder {
 
   private static final String MAIN_METHOD_NAME = "main";
 
+  private static final byte[] MAIN_METHOD_NAME_BYTES = MAIN_METHOD_NAME
+      .getBytes(StandardCharsets.UTF_8);
+
+  private static final byte[] MAIN_METHOD_DESCRIPTOR_BYTES = MAIN_METHOD_TYPE
+      .getDescriptor().getBytes(StandardCharsets.UTF_8);
+
+  private static final int BATCH_SIZE = 512;
+
   private static final FileFilter CLASS_FILE_FILTER = MainClassFinder::isClassFile;
 
   private static final FileFilter PACKAGE_DIRECTORY_FILTER = MainClassFinder::isPackageDirectory;
@@ -121,7 +133,8 @@ public abstract class MainClassFinder {
       File file = stack.pop();
       if (file.isFile()) {
         try (InputStream inputStream = new FileInputStream(file)) {
-          ClassDescriptor classDescriptor = createClassDescriptor(inputStream);
+          ClassDescriptor classDescriptor = createClassDescriptor(inputStream,
+              file.length());
           if (classDescriptor != null && classDescriptor.isMainMethodFound()) {
             String className = convertToClassName(file.getAbsolutePath(),
                 prefix);
@@ -169,6 +182,32 @@ public abstract class MainClassFinder {
     return callback.getMainClass();
   }
 
+  /**
+   * Find the main classes in a given jar file, reusing the results of a
+   * previous search that were saved to the given cache file for the classes
+   * that have not changed. The cache file is updated with the results of this
+   * search, unless it cannot be written.
+   *
+   * @param jarFile         the jar file to search
+   * @param classesLocation the location within the jar containing classes
+   * @param annotationName  the names of the annotations that may be present on
+   *                        the main classes
+   * @param cacheFile       the file used to cache results between searches
+   * @return the main classes or {@code null}
+   * @throws IOException if the jar file cannot be read
+   */
+  public static Set<MainClass> findMutilMainClass(JarFile jarFile,
+      String classesLocation, String[] annotationName, File cacheFile)
+      throws IOException {
+    MutilMainClassCallback callback = new MutilMainClassCallback(
+        annotationName);
+    MainClassCache cache = MainClassCache.load(cacheFile);
+    MainClassFinder.doWithMainClasses(jarFile, classesLocation, callback,
+        cache);
+    cache.save();
+    return callback.getMainClass();
+  }
+
   /**
    * Find a single main class from the given {@code rootFolder}.
    *
@@ -212,15 +251,26 @@ public abstract class MainClassFinder {
    */
   static <T> T doWithMainClasses(JarFile jarFile, String classesLocation,
       MainClassCallback<T> callback) throws IOException {
+    return doWithMainClasses(jarFile, classesLocation, callback, null);
+  }
+
+  private static <T> T doWithMainClasses(JarFile jarFile,
+      String classesLocation, MainClassCallback<T> callback,
+      MainClassCache cache) throws IOException {
     List<JarEntry> classEntries = getClassEntries(jarFile, classesLocation);
     classEntries.sort(new ClassEntryComparator());
-    for (JarEntry entry : classEntries) {
-      try (InputStream inputStream = new BufferedInputStream(
-          jarFile.getInputStream(entry))) {
-        ClassDescriptor classDescriptor = createClassDescriptor(inputStream);
-
+    // Batches are parsed in parallel but handed to the callback in order so
+    // that the results, and the point at which the callback ends processing,
+    // are the same as for a sequential search
+    for (int start = 0; start < classEntries.size(); start += BATCH_SIZE) {
+      List<JarEntry> batch = classEntries
+          .subList(start, Math.min(start + BATCH_SIZE, classEntries.size()));
+      List<ClassDescriptor> classDescriptors = createClassDescriptors(jarFile,
+          batch, cache);
+      for (int i = 0; i < batch.size(); i++) {
+        ClassDescriptor classDescriptor = classDescriptors.get(i);
         if (classDescriptor != null && classDescriptor.isMainMethodFound()) {
-          String className = convertToClassName(entry.getName(),
+          String className = convertToClassName(batch.get(i).getName(),
               classesLocation);
           T result = callback.doWith(
               new MainClass(className, classDescriptor.getAnnotationNames()));
@@ -233,6 +283,60 @@ public abstract class MainClassFinder {
     return null;
   }
 
+  private static List<ClassDescriptor> createClassDescriptors(JarFile jarFile,
+      List<JarEntry> entries, MainClassCache cache) throws IOException {
+    try {
+      return entries.parallelStream()
+          .map((entry) -> createClassDescriptor(jarFile, entry, cache))
+          .collect(Collectors.toList());
+    } catch (UncheckedIOException ex) {
+      throw ex.getCause();
+    }
+  }
+
+  private static ClassDescriptor createClassDescriptor(JarFile jarFile,
+      JarEntry entry, MainClassCache cache) {
+    MainClassCache.Record record = (cache != null) ? cache.get(entry) : null;
+    if (record != null) {
+      return new ClassDescriptor(record.isMainMethodFound(),
+          record.getAnnotationNames());
+    }
+    try (InputStream inputStream = jarFile.getInputStream(entry)) {
+      ClassDescriptor classDescriptor = createClassDescriptor(inputStream,
+          entry.getSize());
+      if (cache != null) {
+        cache.put(entry, classDescriptor != null && classDescriptor
+            .isMainMethodFound(), (classDescriptor != null) ?
+            classDescriptor.getAnnotationNames() :
+            Collections.emptySet());
+      }
+      return classDescriptor;
+    } catch (IOException ex) {
+      throw new UncheckedIOException(ex);
+    }
+  }
+
+  private static ClassDescriptor createClassDescriptor(
+      InputStream inputStream, long size) {
+    try {
+      return createClassDescriptor(readAllBytes(inputStream, size));
+    } catch (IOException ex) {
+      return null;
+    }
+  }
+
+  private static byte[] readAllBytes(InputStream inputStream, long size)
+      throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream(
+        (size > 0 && size < Integer.MAX_VALUE) ? (int) size : 4096);
+    byte[] buffer = new byte[4096];
+    int bytesRead;
+    while ((bytesRead = inputStream.read(buffer)) != -1) {
+      outputStream.write(buffer, 0, bytesRead);
+    }
+    return outputStream.toByteArray();
+  }
+
   private static String convertToClassName(String name, String prefix) {
     name = name.replace('/', '.');
     name = name.replace('\\', '.');
@@ -258,16 +362,100 @@ public abstract class MainClassFinder {
     return classEntries;
   }
 
-  private static ClassDescriptor createClassDescriptor(
-      InputStream inputStream) {
-    try {
-      ClassReader classReader = new ClassReader(inputStream);
-      ClassDescriptor classDescriptor = new ClassDescriptor();
-      classReader.accept(classDescriptor, ClassReader.SKIP_CODE);
-      return classDescriptor;
-    } catch (IOException ex) {
+  private static ClassDescriptor createClassDescriptor(byte[] bytes) {
+    if (!mayHaveMainMethod(bytes)) {
       return null;
     }
+    ClassReader classReader = new ClassReader(bytes);
+    ClassDescriptor classDescriptor = new ClassDescriptor();
+    classReader.accept(classDescriptor, ClassReader.SKIP_CODE);
+    return classDescriptor;
+  }
+
+  /**
+   * Check the constant pool of a class for the name and descriptor of a
+   * {@code main} method. Annotations only matter for classes with a
+   * {@code main} method so they need not be checked. Anything unexpected is
+   * left for the full parse.
+   *
+   * @param bytes the class file
+   * @return {@code false} if the class cannot declare a {@code main} method
+   */
+  private static boolean mayHaveMainMethod(byte[] bytes) {
+    if (bytes.length < 10) {
+      return true;
+    }
+    boolean nameFound = false;
+    boolean descriptorFound = false;
+    int count = readUnsignedShort(bytes, 8);
+    int offset = 10;
+    for (int index = 1; index < count; index++) {
+      if (offset >= bytes.length) {
+        return true;
+      }
+      int tag = bytes[offset];
+      switch (tag) {
+      case 1: // Utf8
+        if (offset + 3 > bytes.length) {
+          return true;
+        }
+        int length = readUnsignedShort(bytes, offset + 1);
+        nameFound = nameFound || matches(bytes, offset + 3, length,
+            MAIN_METHOD_NAME_BYTES);
+        descriptorFound = descriptorFound || matches(bytes, offset + 3,
+            length, MAIN_METHOD_DESCRIPTOR_BYTES);
+        if (nameFound && descriptorFound) {
+          return true;
+        }
+        offset += 3 + length;
+        break;
+      case 7: // Class
+      case 8: // String
+      case 16: // MethodType
+      case 19: // Module
+      case 20: // Package
+        offset += 3;
+        break;
+      case 15: // MethodHandle
+        offset += 4;
+        break;
+      case 3: // Integer
+      case 4: // Float
+      case 9: // Fieldref
+      case 10: // Methodref
+      case 11: // InterfaceMethodref
+      case 12: // NameAndType
+      case 17: // Dynamic
+      case 18: // InvokeDynamic
+        offset += 5;
+        break;
+      case 5: // Long
+      case 6: // Double
+        offset += 9;
+        index++;
+        break;
+      default:
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private static int readUnsignedShort(byte[] bytes, int offset) {
+    return ((bytes[offset] & 0xFF) << 8) | (bytes[offset + 1] & 0xFF);
+  }
+
+  private static boolean matches(byte[] bytes, int offset, int length,
+      byte[] expected) {
+    if (length != expected.length || offset + length > bytes.length) {
+      return false;
+    }
+    for (int i = 0; i < length; i++) {
+      if (bytes[offset + i] != expected[i]) {
+        return false;
+      }
+    }
+    return true;
   }
 
   private static class ClassEntryComparator implements Comparator<JarEntry> {
@@ -299,6 +487,12 @@ public abstract class MainClassFinder {
       super(SpringAsmInfo.ASM_VERSION);
     }
 
+    ClassDescriptor(boolean mainMethodFound, Set<String> annotationNames) {
+      this();
+      this.mainMethodFound = mainMethodFound;
+      this.annotationNames.addAll(annotationNames);
+    }
+
     @Override
     public AnnotationVisitor visitAnnotation(String desc, boolean visible) {
       this.annotationNames.add(Type.getType(desc).getClassName());
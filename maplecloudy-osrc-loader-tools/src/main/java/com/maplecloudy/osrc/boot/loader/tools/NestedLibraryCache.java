@@ -0,0 +1,204 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.tools;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Persisted CRC, size, time and SHA-1 digest of the library files written by a previous
+ * repackage so that libraries that have not changed, typically artifacts from the local
+ * Maven repository, do not have to be read to compute them again. A library file is
+ * considered unchanged while its length and last modified time are the same. Each line
+ * of the cache file holds the recorded values and the absolute path of a library file,
+ * separated by tabs.
+ *
+ * @author osrc
+ */
+final class NestedLibraryCache {
+
+	private static final String HEADER = "# nested libraries v1";
+
+	private final File file;
+
+	private final Map<String, Record> previous;
+
+	private final Map<String, Record> current = new ConcurrentHashMap<>();
+
+	private NestedLibraryCache(File file, Map<String, Record> previous) {
+		this.file = file;
+		this.previous = previous;
+	}
+
+	/**
+	 * Return the recorded values for the given library file.
+	 * @param libraryFile the library file
+	 * @param sha1Required if the SHA-1 digest of the library is required
+	 * @return the values or {@code null} if the file is not cached, has changed or has no
+	 * recorded SHA-1 digest when one is required
+	 */
+	Record get(File libraryFile, boolean sha1Required) {
+		String path = libraryFile.getAbsolutePath();
+		Record record = this.previous.get(path);
+		if (record != null && record.fileLength == libraryFile.length()
+				&& record.fileLastModified == libraryFile.lastModified() && (!sha1Required || record.sha1 != null)) {
+			this.current.put(path, record);
+			return record;
+		}
+		return null;
+	}
+
+	/**
+	 * Record the values computed for the given library file.
+	 * @param libraryFile the library file
+	 * @param crc the CRC of the file
+	 * @param size the size of the file content
+	 * @param time the time to use for the library entry
+	 * @param sha1 the SHA-1 digest or {@code null}
+	 */
+	void put(File libraryFile, long crc, long size, long time, String sha1) {
+		this.current.put(libraryFile.getAbsolutePath(),
+				new Record(libraryFile.length(), libraryFile.lastModified(), crc, size, time, sha1));
+	}
+
+	/**
+	 * Save the recorded values, replacing the previous content of the cache. A cache that
+	 * cannot be written is ignored, the next repackage reads every library instead.
+	 */
+	void save() {
+		try {
+			write();
+		}
+		catch (IOException | RuntimeException ex) {
+			// Read every library next time
+		}
+	}
+
+	private void write() throws IOException {
+		File directory = this.file.getAbsoluteFile().getParentFile();
+		if (!directory.mkdirs() && !directory.isDirectory()) {
+			throw new IOException("Unable to create directory " + directory);
+		}
+		// Write to a temp file first so that a failed write never leaves a truncated cache
+		Path temp = Files.createTempFile(directory.toPath(), this.file.getName(), ".tmp");
+		try {
+			try (BufferedWriter writer = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+				writer.write(HEADER + "\n");
+				for (Map.Entry<String, Record> entry : new TreeMap<>(this.current).entrySet()) {
+					Record record = entry.getValue();
+					writer.write(record.fileLength + "\t" + record.fileLastModified + "\t"
+							+ Long.toHexString(record.crc) + "\t" + record.size + "\t" + record.time + "\t"
+							+ ((record.sha1 != null) ? record.sha1 : "-") + "\t" + entry.getKey() + "\n");
+				}
+			}
+			try {
+				Files.move(temp, this.file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException ex) {
+				Files.move(temp, this.file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+		}
+		finally {
+			Files.deleteIfExists(temp);
+		}
+	}
+
+	/**
+	 * Load the cache from the given file, ignoring a file that cannot be read.
+	 * @param file the cache file
+	 * @return the cache
+	 */
+	static NestedLibraryCache load(File file) {
+		Map<String, Record> previous = new ConcurrentHashMap<>();
+		if (file.isFile()) {
+			try (BufferedReader reader = Files.newBufferedReader(file.toPath(), StandardCharsets.UTF_8)) {
+				if (HEADER.equals(reader.readLine())) {
+					String line = reader.readLine();
+					while (line != null) {
+						String[] fields = line.split("\t", 7);
+						previous.put(fields[6],
+								new Record(Long.parseLong(fields[0]), Long.parseLong(fields[1]),
+										Long.parseLong(fields[2], 16), Long.parseLong(fields[3]),
+										Long.parseLong(fields[4]), "-".equals(fields[5]) ? null : fields[5]));
+						line = reader.readLine();
+					}
+				}
+			}
+			catch (IOException | RuntimeException ex) {
+				// Read every library instead
+				previous.clear();
+			}
+		}
+		return new NestedLibraryCache(file, previous);
+	}
+
+	/**
+	 * The recorded values of a library file.
+	 */
+	static final class Record {
+
+		private final long fileLength;
+
+		private final long fileLastModified;
+
+		private final long crc;
+
+		private final long size;
+
+		private final long time;
+
+		private final String sha1;
+
+		Record(long fileLength, long fileLastModified, long crc, long size, long time, String sha1) {
+			this.fileLength = fileLength;
+			this.fileLastModified = fileLastModified;
+			this.crc = crc;
+			this.size = size;
+			this.time = time;
+			this.sha1 = sha1;
+		}
+
+		long getCrc() {
+			return this.crc;
+		}
+
+		long getSize() {
+			return this.size;
+		}
+
+		long getTime() {
+			return this.time;
+		}
+
+		String getSha1() {
+			return this.sha1;
+		}
+
+	}
+
+}
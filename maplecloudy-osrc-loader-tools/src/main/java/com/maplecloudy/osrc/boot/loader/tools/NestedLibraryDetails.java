@@ -0,0 +1,257 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.tools;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.JarEntry;
+import java.util.jar.JarInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.jar.JarArchiveEntry;
+
+/**
+ * Details of a nested {@link Library} that need to be known before the library can be
+ * written: the CRC and size of the stored entry, its time, the SHA-1 digest used for
+ * unpacking and the precomputed central directory index. Details can be computed for many
+ * libraries concurrently, leaving only the archive write itself sequential.
+ *
+ * @author osrc
+ */
+final class NestedLibraryDetails {
+
+	private static final int BUFFER_SIZE = 32 * 1024;
+
+	private final long crc;
+
+	private final long size;
+
+	private final long time;
+
+	private final String sha1;
+
+	private final byte[] centralDirectoryIndex;
+
+	private NestedLibraryDetails(long crc, long size, long time, String sha1, byte[] centralDirectoryIndex) {
+		this.crc = crc;
+		this.size = size;
+		this.time = time;
+		this.sha1 = sha1;
+		this.centralDirectoryIndex = centralDirectoryIndex;
+	}
+
+	long getTime() {
+		return this.time;
+	}
+
+	/**
+	 * Return the SHA-1 digest of the library or {@code null} if the library does not
+	 * require unpacking.
+	 * @return the SHA-1 digest or {@code null}
+	 */
+	String getSha1() {
+		return this.sha1;
+	}
+
+	/**
+	 * Return the central directory index of the library or {@code null} if the library
+	 * cannot be indexed.
+	 * @return the index bytes or {@code null}
+	 */
+	byte[] getCentralDirectoryIndex() {
+		return this.centralDirectoryIndex;
+	}
+
+	void setupStoredEntry(JarArchiveEntry entry) {
+		entry.setSize(this.size);
+		entry.setCompressedSize(this.size);
+		entry.setCrc(this.crc);
+		entry.setMethod(ZipEntry.STORED);
+	}
+
+	/**
+	 * Compute the details of the given library, reading its content only once.
+	 * @param library the library
+	 * @return the details
+	 * @throws IOException on IO error
+	 */
+	static NestedLibraryDetails compute(Library library) throws IOException {
+		return compute(library, null);
+	}
+
+	/**
+	 * Compute the details of the given library, using the values recorded in the given
+	 * cache when the library file has not changed.
+	 * @param library the library
+	 * @param cache the cache or {@code null}
+	 * @return the details
+	 * @throws IOException on IO error
+	 */
+	static NestedLibraryDetails compute(Library library, NestedLibraryCache cache) throws IOException {
+		File file = library.getFile();
+		NestedLibraryCache.Record record = (cache != null && file != null)
+				? cache.get(file, library.isUnpackRequired()) : null;
+		if (record != null) {
+			// Only the central directory of the file is read
+			String sha1 = library.isUnpackRequired() ? record.getSha1() : null;
+			return new NestedLibraryDetails(record.getCrc(), record.getSize(), record.getTime(), sha1,
+					getCentralDirectoryIndex(library, record.getCrc()));
+		}
+		CRC32 crc = new CRC32();
+		MessageDigest digest = library.isUnpackRequired() ? getSha1Digest() : null;
+		long size = 0;
+		try (InputStream inputStream = library.openStream()) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int bytesRead;
+			while ((bytesRead = inputStream.read(buffer)) != -1) {
+				crc.update(buffer, 0, bytesRead);
+				if (digest != null) {
+					digest.update(buffer, 0, bytesRead);
+				}
+				size += bytesRead;
+			}
+		}
+		long time = getTime(library);
+		String sha1 = (digest != null) ? bytesToHex(digest.digest()) : null;
+		if (cache != null && file != null) {
+			cache.put(file, crc.getValue(), size, time, sha1);
+		}
+		return new NestedLibraryDetails(crc.getValue(), size, time, sha1,
+				getCentralDirectoryIndex(library, crc.getValue()));
+	}
+
+	private static byte[] getCentralDirectoryIndex(Library library, long crc) throws IOException {
+		return (library.getFile() != null && !library.isUnpackRequired())
+				? CentralDirectoryIndex.generate(library.getFile(), crc) : null;
+	}
+
+	/**
+	 * Compute the details of the given libraries using a pool of worker threads.
+	 * @param libraries the libraries
+	 * @param threads the number of threads to use
+	 * @param cache the cache or {@code null}
+	 * @return the details of each library
+	 * @throws IOException on IO error
+	 */
+	static Map<Library, NestedLibraryDetails> computeAll(Collection<Library> libraries, int threads,
+			NestedLibraryCache cache) throws IOException {
+		ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, libraries.size())),
+				new WorkerThreadFactory());
+		try {
+			List<Future<NestedLibraryDetails>> futures = new ArrayList<>(libraries.size());
+			for (Library library : libraries) {
+				futures.add(executor.submit(() -> compute(library, cache)));
+			}
+			Map<Library, NestedLibraryDetails> details = new HashMap<>();
+			int index = 0;
+			for (Library library : libraries) {
+				details.put(library, get(futures.get(index++)));
+			}
+			return details;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static NestedLibraryDetails get(Future<NestedLibraryDetails> future) throws IOException {
+		try {
+			return future.get();
+		}
+		catch (InterruptedException ex) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted while computing library details", ex);
+		}
+		catch (ExecutionException ex) {
+			Throwable cause = ex.getCause();
+			if (cause instanceof IOException) {
+				throw (IOException) cause;
+			}
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	private static long getTime(Library library) {
+		try {
+			try (JarInputStream jarStream = new JarInputStream(library.openStream())) {
+				JarEntry entry = jarStream.getNextJarEntry();
+				while (entry != null) {
+					if (!entry.isDirectory()) {
+						return entry.getTime();
+					}
+					entry = jarStream.getNextJarEntry();
+				}
+			}
+		}
+		catch (Exception ex) {
+			// Ignore and just use the library timestamp
+		}
+		return library.getLastModified();
+	}
+
+	private static MessageDigest getSha1Digest() {
+		try {
+			return MessageDigest.getInstance("SHA-1");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static String bytesToHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b));
+		}
+		return hex.toString();
+	}
+
+	/**
+	 * Factory for the daemon threads used to compute library details.
+	 */
+	private static final class WorkerThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "osrc-repackage-" + this.count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
+}
@@ -80,6 +80,8 @@ public abstract class Packager {
 
   private static final String BOOT_LAYERS_INDEX_ATTRIBUTE = "Osrc-Boot-Layers-Index";
 
+  private static final String BOOT_PACKAGES_INDEX_ATTRIBUTE = "Osrc-Boot-Packages-Index";
+
   private static final byte[] ZIP_FILE_HEADER = new byte[] {'P', 'K', 3, 4};
 
   private static final long FIND_WARNING_TIMEOUT = TimeUnit.SECONDS.toMillis(
@@ -112,6 +114,10 @@ public abstract class Packager {
 
   private boolean includeRelevantJarModeJars = true;
 
+  private int libraryThreads = 1;
+
+  private boolean compressLibraries;
+
   /**
    * Create a new {@link Packager} instance.
    *
@@ -216,6 +222,31 @@ public abstract class Packager {
     this.includeRelevantJarModeJars = includeRelevantJarModeJars;
   }
 
+  /**
+   * Sets the number of threads used to compute the CRC, size and digests of the
+   * nested libraries before they are written. Values less than {@code 1} use
+   * one thread per available processor. The archive itself is always written
+   * sequentially so the output does not depend on the number of threads.
+   *
+   * @param libraryThreads the number of threads
+   */
+  public void setLibraryThreads(int libraryThreads) {
+    this.libraryThreads = (libraryThreads > 0) ?
+        libraryThreads :
+        Runtime.getRuntime().availableProcessors();
+  }
+
+  /**
+   * Sets if nested libraries should be compressed rather than stored. This
+   * makes the archive smaller at the cost of the loader inflating each library
+   * once, on first access.
+   *
+   * @param compressLibraries if nested libraries are compressed
+   */
+  public void setCompressLibraries(boolean compressLibraries) {
+    this.compressLibraries = compressLibraries;
+  }
+
   protected final boolean isAlreadyPackaged() {
     return isAlreadyPackaged(this.source);
   }
@@ -249,6 +280,7 @@ public abstract class Packager {
     if (isLayered()) {
       writer.useLayers(this.layers, this.layersIndex);
     }
+    writer.setCompressNestedLibraries(this.compressLibraries);
     runAbleApp.getAppPackage()
         .setPackageName(this.artifact.getFile().getName());
     runAbleApp.getAppPackage().setType(AppPackageType.FILE);
@@ -492,7 +524,35 @@ public abstract class Packager {
 
   protected Set<MainClassFinder.MainClass> findMainMethod(JarFile source) throws IOException {
     return MainClassFinder.findMutilMainClass(source,
-        getLayout().getClassesLocation(), MAPLECLOUDY_OSRC_APPLICATION_CLASS_NAME);
+        getLayout().getClassesLocation(), MAPLECLOUDY_OSRC_APPLICATION_CLASS_NAME,
+        getMainClassCacheFile());
+  }
+
+  /**
+   * Return the {@link File} used to cache main class search results between
+   * repackage runs.
+   *
+   * @return the main class cache file
+   */
+  protected File getMainClassCacheFile() {
+    return new File(getCacheDirectory(), this.source.getName() + ".main-classes");
+  }
+
+  /**
+   * Return the {@link File} used to cache the CRC, size and digest of nested
+   * library files between repackage runs.
+   *
+   * @return the nested library cache file
+   */
+  protected File getNestedLibraryCacheFile() {
+    return new File(getCacheDirectory(), this.source.getName() + ".libraries");
+  }
+
+  private File getCacheDirectory() {
+    return (this.project != null && this.project.getBuild() != null
+        && this.project.getBuild().getDirectory() != null) ?
+        new File(this.project.getBuild().getDirectory()) :
+        this.source.getParentFile();
   }
 
   /**
@@ -602,6 +662,8 @@ public abstract class Packager {
         getLayout().getLibraryLocation("", LibraryScope.COMPILE));
     putIfHasLength(attributes, BOOT_CLASSPATH_INDEX_ATTRIBUTE,
         layout.getClasspathIndexFileLocation());
+    putIfHasLength(attributes, BOOT_PACKAGES_INDEX_ATTRIBUTE,
+        layout.getPackagesIndexFileLocation());
     if (isLayered()) {
       putIfHasLength(attributes, BOOT_LAYERS_INDEX_ATTRIBUTE,
           layout.getLayersIndexFileLocation());
@@ -762,6 +824,9 @@ public abstract class Packager {
     }
 
     void write(AbstractJarWriter writer) throws IOException {
+      writer.prepareNestedLibraries(this.libraries.values().stream()
+              .filter(Library::isIncluded).collect(Collectors.toList()),
+          Packager.this.libraryThreads, getNestedLibraryCacheFile());
       List<String> writtenPaths = new ArrayList<>();
       for (Entry<String,Library> entry : this.libraries.entrySet()) {
         String path = entry.getKey();
@@ -776,6 +841,7 @@ public abstract class Packager {
         writeClasspathIndex(writtenPaths, (RepackagingLayout) getLayout(),
             writer);
       }
+      writePackagesIndex(writtenPaths, writer);
     }
 
     private void writeClasspathIndex(List<String> paths,
@@ -785,6 +851,18 @@ public abstract class Packager {
       writer.writeIndexFile(layout.getClasspathIndexFileLocation(), names);
     }
 
+    private void writePackagesIndex(List<String> paths,
+        AbstractJarWriter writer) throws IOException {
+      String location = getLayout().getPackagesIndexFileLocation();
+      if (StringUtils.hasLength(location)) {
+        PackagesIndex packagesIndex = new PackagesIndex();
+        for (String path : paths) {
+          packagesIndex.add(path, this.libraries.get(path));
+        }
+        writer.writeEntry(location, packagesIndex::writeTo);
+      }
+    }
+
     /**
      * An {@link AbstractJarWriter.UnpackHandler} that determines that an entry needs to be
      * unpacked if a library that requires unpacking has a matching entry name.
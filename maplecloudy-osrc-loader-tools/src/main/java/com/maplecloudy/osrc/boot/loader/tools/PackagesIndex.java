@@ -0,0 +1,118 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.tools;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Index describing the directories contained in each nested library so that the loader
+ * can go straight to the libraries that may hold a class or resource. Index files use
+ * the same YAML compatible format as the {@link LayersIndex}: each library path is
+ * written as a quoted string prefixed by a dash space ({@code "- "}) and with a colon
+ * ({@code ":"}) suffix, followed by its directories written as quoted strings prefixed
+ * by space space dash space ({@code "  - "}). Directory names end with {@code /}, the
+ * root directory is written as an empty string.
+ *
+ * @author osrc
+ */
+public class PackagesIndex {
+
+	private static final String VERSIONS_PREFIX = "META-INF/versions/";
+
+	private final Map<String, Set<String>> directories = new LinkedHashMap<>();
+
+	/**
+	 * Add a library to the index.
+	 * @param path the path of the library within the archive
+	 * @param library the library
+	 * @throws IOException on IO error
+	 */
+	public void add(String path, Library library) throws IOException {
+		Set<String> directories = new TreeSet<>();
+		if (library.getFile() != null) {
+			try (ZipFile zipFile = new ZipFile(library.getFile())) {
+				Enumeration<? extends ZipEntry> entries = zipFile.entries();
+				while (entries.hasMoreElements()) {
+					addDirectories(entries.nextElement().getName(), directories);
+				}
+			}
+		}
+		else {
+			try (InputStream inputStream = library.openStream();
+					ZipInputStream zipInputStream = new ZipInputStream(inputStream)) {
+				ZipEntry entry;
+				while ((entry = zipInputStream.getNextEntry()) != null) {
+					addDirectories(entry.getName(), directories);
+				}
+			}
+		}
+		this.directories.put(path, directories);
+	}
+
+	private void addDirectories(String name, Set<String> directories) {
+		directories.add(getDirectory(name));
+		if (name.startsWith(VERSIONS_PREFIX)) {
+			// Multi-release entries are looked up using their unversioned name
+			int versionEnd = name.indexOf('/', VERSIONS_PREFIX.length());
+			if (versionEnd != -1) {
+				directories.add(getDirectory(name.substring(versionEnd + 1)));
+			}
+		}
+	}
+
+	/**
+	 * Return the directory that will be used to look up the given entry or resource
+	 * name. For directory names this is the parent directory. Must be kept in sync with
+	 * {@code com.maplecloudy.osrc.boot.loader.PackagesIndexFile}.
+	 * @param name the entry name
+	 * @return the directory, ending with {@code /}, or an empty string for the root
+	 */
+	static String getDirectory(String name) {
+		int end = name.endsWith("/") ? name.length() - 1 : name.length();
+		return name.substring(0, name.lastIndexOf('/', end - 1) + 1);
+	}
+
+	/**
+	 * Write the packages index to an output stream.
+	 * @param out the destination stream
+	 * @throws IOException on IO error
+	 */
+	public void writeTo(OutputStream out) throws IOException {
+		BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+		for (Map.Entry<String, Set<String>> entry : this.directories.entrySet()) {
+			writer.write("- \"" + entry.getKey() + "\":\n");
+			for (String directory : entry.getValue()) {
+				writer.write("  - \"" + directory + "\"\n");
+			}
+		}
+		writer.flush();
+	}
+
+}
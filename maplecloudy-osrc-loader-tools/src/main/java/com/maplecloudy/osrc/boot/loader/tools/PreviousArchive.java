@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.tools;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.ZipEntry;
+
+import org.apache.commons.compress.archivers.jar.JarArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+
+/**
+ * The output of a previous repackage whose compressed entry data can be reused when an
+ * entry has not changed, so that only changed entries have to be deflated again. An
+ * entry is considered unchanged when the previous archive holds a deflated entry with
+ * the same name, CRC and size.
+ *
+ * @author osrc
+ */
+final class PreviousArchive implements Closeable {
+
+	private final ZipFile zipFile;
+
+	PreviousArchive(File file) throws IOException {
+		this.zipFile = new ZipFile(file);
+	}
+
+	/**
+	 * Return the compressed data of the previous entry matching the given entry, updating
+	 * the method and compressed size of the given entry to match the data.
+	 * @param entry the entry that is about to be written
+	 * @return the raw compressed data or {@code null} if the entry cannot be reused
+	 * @throws IOException on IO error
+	 */
+	InputStream getRawInputStream(JarArchiveEntry entry) throws IOException {
+		if (entry.getCrc() == -1 || entry.getSize() == -1 || entry.getMethod() == ZipEntry.STORED) {
+			return null;
+		}
+		ZipArchiveEntry previous = this.zipFile.getEntry(entry.getName());
+		if (previous == null || previous.getMethod() != ZipEntry.DEFLATED || previous.getCrc() != entry.getCrc()
+				|| previous.getSize() != entry.getSize()) {
+			return null;
+		}
+		InputStream inputStream = this.zipFile.getRawInputStream(previous);
+		if (inputStream != null) {
+			entry.setMethod(ZipEntry.DEFLATED);
+			entry.setCompressedSize(previous.getCompressedSize());
+		}
+		return inputStream;
+	}
+
+	@Override
+	public void close() throws IOException {
+		this.zipFile.close();
+	}
+
+}
@@ -40,6 +40,8 @@ public class Repackager extends Packager {
 
 	private boolean backupSource = true;
 
+	private boolean incremental;
+
 	/**
 	 * Create a new {@link Repackager} instance.
 	 * @param source the source archive file to package
@@ -56,6 +58,29 @@ public class Repackager extends Packager {
 		this.backupSource = backupSource;
 	}
 
+	/**
+	 * Sets if the compressed data of unchanged entries should be reused from a previous
+	 * repackage written to the same destination, so that only changed entries are
+	 * compressed again. Only applies when the destination differs from the source, an
+	 * archive that is repackaged in place replaces the previous repackaged archive before
+	 * it can be reused.
+	 * @param incremental if unchanged entries of the previous archive are reused
+	 * @see #isIncrementalApplicable(File)
+	 */
+	public void setIncremental(boolean incremental) {
+		this.incremental = incremental;
+	}
+
+	/**
+	 * Return if unchanged entries of a previous repackage can be reused when repackaging
+	 * to the given destination.
+	 * @param destination the destination file
+	 * @return if incremental repackaging applies to the destination
+	 */
+	public boolean isIncrementalApplicable(File destination) {
+		return !getSource().equals(destination.getAbsoluteFile());
+	}
+
 	/**
 	 * Repackage the source file so that it can be run using '{@literal java -jar}'.
 	 * @param libraries the libraries required to run the archive
@@ -115,22 +140,34 @@ public class Repackager extends Packager {
 			workingSource.delete();
 			renameFile(source, workingSource);
 		}
+		File previous = null;
+		if (this.incremental && source.equals(workingSource) && destination.isFile()
+				&& isAlreadyPackaged(destination)) {
+			previous = new File(destination.getParentFile(), destination.getName() + ".previous");
+			previous.delete();
+			renameFile(destination, previous);
+		}
 		destination.delete();
 		try {
 			try (JarFile sourceJar = new JarFile(workingSource)) {
-				repackage(sourceJar, destination, libraries, launchScript, lastModifiedTime);
+				repackage(sourceJar, destination, libraries, launchScript, lastModifiedTime, previous);
 			}
 		}
 		finally {
 			if (!this.backupSource && !source.equals(workingSource)) {
 				deleteFile(workingSource);
 			}
+			if (previous != null) {
+				deleteFile(previous);
+			}
 		}
 	}
 
 	private void repackage(JarFile sourceJar, File destination, Libraries libraries, LaunchScript launchScript,
-			FileTime lastModifiedTime) throws IOException {
-		try (JarWriter writer = new JarWriter(destination, launchScript, lastModifiedTime)) {
+			FileTime lastModifiedTime, File previous) throws IOException {
+		try (JarWriter writer = new JarWriter(destination, launchScript, lastModifiedTime);
+				PreviousArchive previousArchive = (previous != null) ? new PreviousArchive(previous) : null) {
+			writer.setPreviousArchive(previousArchive);
 			write(sourceJar, libraries, writer, lastModifiedTime != null);
 		}
 		if (lastModifiedTime != null) {
@@ -17,11 +17,13 @@
 package com.maplecloudy.osrc.boot.loader;
 
 import java.io.IOException;
+import java.net.URL;
 import java.util.jar.Attributes;
 import java.util.jar.Manifest;
 
 import com.maplecloudy.osrc.boot.loader.archive.Archive;
 import com.maplecloudy.osrc.boot.loader.archive.ExplodedArchive;
+import com.maplecloudy.osrc.boot.loader.archive.JarFileArchive;
 import com.maplecloudy.osrc.boot.loader.archive.Archive.EntryFilter;
 
 /**
@@ -38,6 +40,10 @@ public class JarLauncher extends ExecutableArchiveLauncher {
 
 	private static final String DEFAULT_CLASSPATH_INDEX_LOCATION = "BOOT-INF/classpath.idx";
 
+	private static final String DEFAULT_PACKAGES_INDEX_LOCATION = "BOOT-INF/packages.idx";
+
+	private static final String BOOT_PACKAGES_INDEX_ATTRIBUTE = "Osrc-Boot-Packages-Index";
+
 	static final EntryFilter NESTED_ARCHIVE_ENTRY_FILTER = (entry) -> {
 		if (entry.isDirectory()) {
 			return entry.getName().equals("BOOT-INF/classes/");
@@ -69,6 +75,28 @@ public class JarLauncher extends ExecutableArchiveLauncher {
 		return (location != null) ? location : DEFAULT_CLASSPATH_INDEX_LOCATION;
 	}
 
+	@Override
+	protected ClassLoader createClassLoader(URL[] urls) throws Exception {
+		PackagesIndexFile packagesIndex = getPackagesIndex(getArchive());
+		if (packagesIndex == null) {
+			return super.createClassLoader(urls);
+		}
+		return new LaunchedURLClassLoader(isExploded(), getArchive(), urls, getClass().getClassLoader(),
+				packagesIndex);
+	}
+
+	private PackagesIndexFile getPackagesIndex(Archive archive) throws IOException {
+		// Exploded archives are served from the file system and don't need the index
+		if (archive instanceof JarFileArchive) {
+			Manifest manifest = archive.getManifest();
+			Attributes attributes = (manifest != null) ? manifest.getMainAttributes() : null;
+			String location = (attributes != null) ? attributes.getValue(BOOT_PACKAGES_INDEX_ATTRIBUTE) : null;
+			location = (location != null) ? location : DEFAULT_PACKAGES_INDEX_LOCATION;
+			return PackagesIndexFile.loadIfPossible(((JarFileArchive) archive).getInputStream(location));
+		}
+		return null;
+	}
+
 	@Override
 	protected boolean isPostProcessingClassPathArchives() {
 		return false;
@@ -22,11 +22,26 @@ import java.io.InputStream;
 import java.net.JarURLConnection;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.net.MalformedURLException;
 import java.net.URLConnection;
 import java.security.AccessController;
+import java.security.CodeSource;
 import java.security.PrivilegedExceptionAction;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Supplier;
+import java.util.jar.Attributes;
+import java.util.jar.Attributes.Name;
+import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 
@@ -53,9 +68,11 @@ public class LaunchedURLClassLoader extends URLClassLoader {
 
 	private final Archive rootArchive;
 
-	private final Object packageLock = new Object();
+	private final ConcurrentMap<String, Object> packageLocks = new ConcurrentHashMap<>();
 
-	private volatile DefinePackageCallType definePackageCallType;
+	private final IndexedClassPath classPath;
+
+	private final ThreadLocal<DefinePackageCallType> definePackageCallType = new ThreadLocal<>();
 
 	/**
 	 * Create a new {@link LaunchedURLClassLoader} instance.
@@ -85,9 +102,24 @@ public class LaunchedURLClassLoader extends URLClassLoader {
 	 * @since 2.3.1
 	 */
 	public LaunchedURLClassLoader(boolean exploded, Archive rootArchive, URL[] urls, ClassLoader parent) {
+		this(exploded, rootArchive, urls, parent, null);
+	}
+
+	/**
+	 * Create a new {@link LaunchedURLClassLoader} instance.
+	 * @param exploded if the underlying archive is exploded
+	 * @param rootArchive the root archive or {@code null}
+	 * @param urls the URLs from which to load classes and resources
+	 * @param parent the parent class loader for delegation
+	 * @param packagesIndex the packages index used to find the URLs that may contain a
+	 * class or resource or {@code null} to consider every URL
+	 */
+	LaunchedURLClassLoader(boolean exploded, Archive rootArchive, URL[] urls, ClassLoader parent,
+			PackagesIndexFile packagesIndex) {
 		super(urls, parent);
 		this.exploded = exploded;
 		this.rootArchive = rootArchive;
+		this.classPath = (!exploded) ? new IndexedClassPath(urls, packagesIndex) : null;
 	}
 
 	@Override
@@ -97,6 +129,12 @@ public class LaunchedURLClassLoader extends URLClassLoader {
 		}
 		Handler.setUseFastConnectionExceptions(true);
 		try {
+			if (this.classPath != null && IndexedClassPath.isIndexable(name)) {
+				List<URL> resources = this.classPath.findResources(name, true);
+				if (resources != null) {
+					return resources.isEmpty() ? null : resources.get(0);
+				}
+			}
 			return super.findResource(name);
 		}
 		finally {
@@ -111,6 +149,12 @@ public class LaunchedURLClassLoader extends URLClassLoader {
 		}
 		Handler.setUseFastConnectionExceptions(true);
 		try {
+			if (this.classPath != null && IndexedClassPath.isIndexable(name)) {
+				List<URL> resources = this.classPath.findResources(name, false);
+				if (resources != null) {
+					return Collections.enumeration(resources);
+				}
+			}
 			return new UseFastConnectionExceptionsEnumeration(super.findResources(name));
 		}
 		finally {
@@ -118,6 +162,119 @@ public class LaunchedURLClassLoader extends URLClassLoader {
 		}
 	}
 
+	@Override
+	protected Class<?> findClass(String name) throws ClassNotFoundException {
+		// Classes are read straight from the nested jar entries, not through jar: URLs
+		if (this.classPath == null) {
+			return super.findClass(name);
+		}
+		String path = name.replace('.', '/').concat(".class");
+		if (!IndexedClassPath.isIndexable(path)) {
+			return super.findClass(name);
+		}
+		int[] candidates = this.classPath.getCandidates(path);
+		for (int candidate : candidates) {
+			JarFile jarFile = this.classPath.getJarFile(candidate);
+			if (jarFile == null) {
+				return super.findClass(name);
+			}
+			JarEntry entry = jarFile.getJarEntry(path);
+			if (entry != null) {
+				return defineClass(name, this.classPath.getUrl(candidate), jarFile, entry);
+			}
+		}
+		throw new ClassNotFoundException(name);
+	}
+
+	private Class<?> defineClass(String name, URL url, JarFile jarFile, JarEntry entry)
+			throws ClassNotFoundException {
+		byte[] bytes;
+		try {
+			bytes = com.maplecloudy.osrc.boot.loader.jar.JarFile.getBytes(jarFile, entry);
+			if (bytes == null) {
+				try (InputStream inputStream = jarFile.getInputStream(entry)) {
+					bytes = readBytes(inputStream, entry.getSize());
+				}
+			}
+		}
+		catch (IOException ex) {
+			throw new ClassNotFoundException(name, ex);
+		}
+		int lastDot = name.lastIndexOf('.');
+		if (lastDot >= 0) {
+			String packageName = name.substring(0, lastDot);
+			Package definedPackage = getPackage(packageName);
+			if (definedPackage == null) {
+				// As URLClassLoader does, so that the package has the attributes of the jar
+				Manifest manifest = getManifest(jarFile);
+				try {
+					if (manifest != null) {
+						definePackage(packageName, manifest, url);
+					}
+					else {
+						definePackage(packageName, null, null, null, null, null, null, null);
+					}
+				}
+				catch (IllegalArgumentException ex) {
+					// Tolerate race condition due to being parallel capable
+				}
+			}
+			else if (definedPackage.isSealed()) {
+				if (!definedPackage.isSealed(url)) {
+					throw new SecurityException("sealing violation: package " + packageName + " is sealed");
+				}
+			}
+			else if (isSealed(packageName, getManifest(jarFile))) {
+				throw new SecurityException("sealing violation: can't seal package " + packageName + ": already loaded");
+			}
+		}
+		CodeSource codeSource = new CodeSource(url, entry.getCodeSigners());
+		return defineClass(name, bytes, 0, bytes.length, codeSource);
+	}
+
+	private Manifest getManifest(JarFile jarFile) {
+		try {
+			return jarFile.getManifest();
+		}
+		catch (IOException ex) {
+			return null;
+		}
+	}
+
+	private boolean isSealed(String packageName, Manifest manifest) {
+		if (manifest == null) {
+			return false;
+		}
+		Attributes attributes = manifest.getAttributes(packageName.replace('.', '/').concat("/"));
+		String sealed = (attributes != null) ? attributes.getValue(Name.SEALED) : null;
+		if (sealed == null) {
+			sealed = manifest.getMainAttributes().getValue(Name.SEALED);
+		}
+		return "true".equalsIgnoreCase(sealed);
+	}
+
+	private byte[] readBytes(InputStream inputStream, long size) throws IOException {
+		if (size < 0 || size > Integer.MAX_VALUE) {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int bytesRead;
+			while ((bytesRead = inputStream.read(buffer)) != -1) {
+				outputStream.write(buffer, 0, bytesRead);
+			}
+			return outputStream.toByteArray();
+		}
+		byte[] bytes = new byte[(int) size];
+		int offset = 0;
+		while (offset < bytes.length) {
+			int bytesRead = inputStream.read(bytes, offset, bytes.length - offset);
+			if (bytesRead == -1) {
+				throw new IOException("Unexpected end of class data");
+			}
+			offset += bytesRead;
+		}
+		return bytes;
+	}
+
 	@Override
 	protected Class<?> loadClass(String name, boolean resolve) throws ClassNotFoundException {
 		if (name.startsWith("com.maplecloudy.osrc.boot.loader.jarmode.")) {
@@ -156,6 +313,13 @@ public class LaunchedURLClassLoader extends URLClassLoader {
 	}
 
 	private Class<?> loadClassInLaunchedClassLoader(String name) throws ClassNotFoundException {
+		synchronized (getClassLoadingLock(name)) {
+			Class<?> loadedClass = findLoadedClass(name);
+			return (loadedClass != null) ? loadedClass : defineClassInLaunchedClassLoader(name);
+		}
+	}
+
+	private Class<?> defineClassInLaunchedClassLoader(String name) throws ClassNotFoundException {
 		String internalName = name.replace('.', '/') + ".class";
 		InputStream inputStream = getParent().getResourceAsStream(internalName);
 		if (inputStream == null) {
@@ -196,7 +360,12 @@ public class LaunchedURLClassLoader extends URLClassLoader {
 			String packageName = className.substring(0, lastDot);
 			if (getPackage(packageName) == null) {
 				try {
-					definePackage(className, packageName);
+					// Only one thread needs to search the class path for a given package
+					synchronized (getPackageLock(packageName)) {
+						if (getPackage(packageName) == null) {
+							definePackage(className, packageName);
+						}
+					}
 				}
 				catch (IllegalArgumentException ex) {
 					// Tolerate race condition due to being parallel capable
@@ -212,11 +381,34 @@ public class LaunchedURLClassLoader extends URLClassLoader {
 		}
 	}
 
+	private Object getPackageLock(String packageName) {
+		Object lock = this.packageLocks.get(packageName);
+		if (lock == null) {
+			Object newLock = new Object();
+			lock = this.packageLocks.putIfAbsent(packageName, newLock);
+			if (lock == null) {
+				lock = newLock;
+			}
+		}
+		return lock;
+	}
+
 	private void definePackage(String className, String packageName) {
 		try {
 			AccessController.doPrivileged((PrivilegedExceptionAction<Object>) () -> {
 				String packageEntryName = packageName.replace('.', '/') + "/";
 				String classEntryName = className.replace('.', '/') + ".class";
+				if (this.classPath != null && IndexedClassPath.isIndexable(classEntryName)) {
+					for (int candidate : this.classPath.getCandidates(classEntryName)) {
+						JarFile jarFile = this.classPath.getJarFile(candidate);
+						if (jarFile != null && jarFile.getEntry(classEntryName) != null
+								&& jarFile.getEntry(packageEntryName) != null && jarFile.getManifest() != null) {
+							definePackage(packageName, jarFile.getManifest(), this.classPath.getUrl(candidate));
+							return null;
+						}
+					}
+					return null;
+				}
 				for (URL url : getURLs()) {
 					try {
 						URLConnection connection = url.openConnection();
@@ -246,9 +438,7 @@ public class LaunchedURLClassLoader extends URLClassLoader {
 		if (!this.exploded) {
 			return super.definePackage(name, man, url);
 		}
-		synchronized (this.packageLock) {
-			return doDefinePackage(DefinePackageCallType.MANIFEST, () -> super.definePackage(name, man, url));
-		}
+		return doDefinePackage(DefinePackageCallType.MANIFEST, () -> super.definePackage(name, man, url));
 	}
 
 	@Override
@@ -258,19 +448,17 @@ public class LaunchedURLClassLoader extends URLClassLoader {
 			return super.definePackage(name, specTitle, specVersion, specVendor, implTitle, implVersion, implVendor,
 					sealBase);
 		}
-		synchronized (this.packageLock) {
-			if (this.definePackageCallType == null) {
-				// We're not part of a call chain which means that the URLClassLoader
-				// is trying to define a package for our exploded JAR. We use the
-				// manifest version to ensure package attributes are set
-				Manifest manifest = getManifest(this.rootArchive);
-				if (manifest != null) {
-					return definePackage(name, manifest, sealBase);
-				}
+		if (this.definePackageCallType.get() == null) {
+			// We're not part of a call chain which means that the URLClassLoader
+			// is trying to define a package for our exploded JAR. We use the
+			// manifest version to ensure package attributes are set
+			Manifest manifest = getManifest(this.rootArchive);
+			if (manifest != null) {
+				return definePackage(name, manifest, sealBase);
 			}
-			return doDefinePackage(DefinePackageCallType.ATTRIBUTES, () -> super.definePackage(name, specTitle,
-					specVersion, specVendor, implTitle, implVersion, implVendor, sealBase));
 		}
+		return doDefinePackage(DefinePackageCallType.ATTRIBUTES, () -> super.definePackage(name, specTitle,
+				specVersion, specVendor, implTitle, implVersion, implVendor, sealBase));
 	}
 
 	private Manifest getManifest(Archive archive) {
@@ -283,13 +471,19 @@ public class LaunchedURLClassLoader extends URLClassLoader {
 	}
 
 	private <T> T doDefinePackage(DefinePackageCallType type, Supplier<T> call) {
-		DefinePackageCallType existingType = this.definePackageCallType;
+		// Call types are tracked per thread so that packages can be defined concurrently
+		DefinePackageCallType existingType = this.definePackageCallType.get();
 		try {
-			this.definePackageCallType = type;
+			this.definePackageCallType.set(type);
 			return call.get();
 		}
 		finally {
-			this.definePackageCallType = existingType;
+			if (existingType != null) {
+				this.definePackageCallType.set(existingType);
+			}
+			else {
+				this.definePackageCallType.remove();
+			}
 		}
 	}
 
@@ -321,6 +515,164 @@ public class LaunchedURLClassLoader extends URLClassLoader {
 		}
 	}
 
+	/**
+	 * The class path URLs of the class loader along with the {@link PackagesIndexFile}
+	 * derived lookup of the URLs that may contain a given directory. URLs that are not
+	 * covered by the index (for example the application classes) are always candidates,
+	 * as are all URLs when there is no index.
+	 */
+	private static final class IndexedClassPath {
+
+		private static final String SEPARATOR = "!/";
+
+		private final URL[] urls;
+
+		private final AtomicReferenceArray<JarFile> jarFiles;
+
+		private final AtomicIntegerArray unavailable;
+
+		private final Map<String, int[]> candidates = new HashMap<>();
+
+		private final int[] unindexedCandidates;
+
+		IndexedClassPath(URL[] urls, PackagesIndexFile packagesIndex) {
+			this.urls = urls.clone();
+			this.jarFiles = new AtomicReferenceArray<>(urls.length);
+			this.unavailable = new AtomicIntegerArray(urls.length);
+			Map<String, List<Integer>> indexed = new HashMap<>();
+			List<Integer> unindexed = new ArrayList<>();
+			for (int i = 0; i < urls.length; i++) {
+				Set<String> directories = (packagesIndex != null)
+						? packagesIndex.getDirectories(getLibraryPath(urls[i])) : null;
+				if (directories == null) {
+					unindexed.add(i);
+				}
+				else {
+					for (String directory : directories) {
+						indexed.computeIfAbsent(directory, (key) -> new ArrayList<>()).add(i);
+					}
+				}
+			}
+			this.unindexedCandidates = toArray(unindexed, Collections.emptyList());
+			indexed.forEach((directory, candidates) -> this.candidates.put(directory, toArray(candidates, unindexed)));
+		}
+
+		private String getLibraryPath(URL url) {
+			String file = url.getFile();
+			if (!"jar".equals(url.getProtocol()) || !file.endsWith(SEPARATOR)) {
+				return null;
+			}
+			file = file.substring(0, file.length() - SEPARATOR.length());
+			int separator = file.lastIndexOf(SEPARATOR);
+			return (separator != -1) ? file.substring(separator + SEPARATOR.length()) : null;
+		}
+
+		private int[] toArray(List<Integer> candidates, List<Integer> unindexed) {
+			// Merge both sorted lists so that class path order is retained
+			int[] result = new int[candidates.size() + unindexed.size()];
+			int candidateIndex = 0;
+			int unindexedIndex = 0;
+			for (int i = 0; i < result.length; i++) {
+				if (unindexedIndex == unindexed.size() || (candidateIndex < candidates.size()
+						&& candidates.get(candidateIndex) < unindexed.get(unindexedIndex))) {
+					result[i] = candidates.get(candidateIndex++);
+				}
+				else {
+					result[i] = unindexed.get(unindexedIndex++);
+				}
+			}
+			return result;
+		}
+
+		int[] getCandidates(String name) {
+			int[] candidates = this.candidates.get(PackagesIndexFile.getDirectory(name));
+			return (candidates != null) ? candidates : this.unindexedCandidates;
+		}
+
+		URL getUrl(int candidate) {
+			return this.urls[candidate];
+		}
+
+		/**
+		 * Return the jar file for the given candidate or {@code null} if the URL is not
+		 * backed by a jar file, or cannot be opened, and the regular class path lookup
+		 * must be used instead. Such URLs are not opened again.
+		 * @param candidate the candidate index
+		 * @return the jar file or {@code null}
+		 */
+		JarFile getJarFile(int candidate) {
+			JarFile jarFile = this.jarFiles.get(candidate);
+			if (jarFile == null && this.unavailable.get(candidate) == 0) {
+				try {
+					URLConnection connection = this.urls[candidate].openConnection();
+					if (connection instanceof JarURLConnection) {
+						// Classes are loaded in parallel, keep the jar file that was set first
+						this.jarFiles.compareAndSet(candidate, null, ((JarURLConnection) connection).getJarFile());
+						jarFile = this.jarFiles.get(candidate);
+					}
+					else {
+						this.unavailable.set(candidate, 1);
+					}
+				}
+				catch (IOException ex) {
+					// Use the regular lookup, which reports the failure, from now on
+					this.unavailable.set(candidate, 1);
+				}
+			}
+			return jarFile;
+		}
+
+		/**
+		 * Find the URLs of the given resource.
+		 * @param name the resource name
+		 * @param first if only the first match is required
+		 * @return the resource URLs or {@code null} if the regular class path lookup
+		 * must be used instead
+		 */
+		List<URL> findResources(String name, boolean first) {
+			List<URL> resources = new ArrayList<>(1);
+			for (int candidate : getCandidates(name)) {
+				JarFile jarFile = getJarFile(candidate);
+				if (jarFile == null) {
+					return null;
+				}
+				if (jarFile.getEntry(name) != null) {
+					try {
+						resources.add(new URL(this.urls[candidate], name));
+					}
+					catch (MalformedURLException ex) {
+						return null;
+					}
+					if (first) {
+						break;
+					}
+				}
+			}
+			return resources;
+		}
+
+		/**
+		 * Return if the given name can be looked up using the index. Names that would
+		 * need encoding or normalizing when converted to a URL use the regular lookup.
+		 * @param name the entry name
+		 * @return if the name can be looked up using the index
+		 */
+		static boolean isIndexable(String name) {
+			if (name.isEmpty() || name.charAt(0) == '/' || name.charAt(0) == '.' || name.contains("/.")) {
+				return false;
+			}
+			for (int i = 0; i < name.length(); i++) {
+				char ch = name.charAt(i);
+				if (!((ch >= 'a' && ch <= 'z') || (ch >= 'A' && ch <= 'Z') || (ch >= '0' && ch <= '9') || ch == '/'
+						|| ch == '.' || ch == '-' || ch == '_' || ch == '$')) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
 	private static class UseFastConnectionExceptionsEnumeration implements Enumeration<URL> {
 
 		private final Enumeration<URL> delegate;
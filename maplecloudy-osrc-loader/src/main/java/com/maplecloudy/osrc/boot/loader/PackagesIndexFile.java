@@ -0,0 +1,91 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A packages index file that records the directories contained in each nested library.
+ * Used by the {@link LaunchedURLClassLoader} to go straight to the libraries that may
+ * contain a class or resource rather than probing every library in turn.
+ *
+ * @author osrc
+ */
+final class PackagesIndexFile {
+
+	private final Map<String, Set<String>> libraries = new HashMap<>();
+
+	private PackagesIndexFile(BufferedReader reader) throws IOException {
+		Map<String, String> directoryNames = new HashMap<>();
+		Set<String> directories = null;
+		String line = reader.readLine();
+		while (line != null) {
+			if (line.startsWith("- \"") && line.endsWith("\":")) {
+				directories = new HashSet<>();
+				this.libraries.put(line.substring(3, line.length() - 2), directories);
+			}
+			else if (line.startsWith("  - \"") && line.endsWith("\"") && directories != null) {
+				String directory = line.substring(5, line.length() - 1);
+				// Most directories appear in only a few libraries, share the instances
+				directories.add(directoryNames.computeIfAbsent(directory, (key) -> key));
+			}
+			else if (!line.trim().isEmpty()) {
+				throw new IllegalStateException("Malformed packages index line [" + line + "]");
+			}
+			line = reader.readLine();
+		}
+	}
+
+	/**
+	 * Return the directories contained in the given library.
+	 * @param library the path of the library within the root archive
+	 * @return the directories or {@code null} if the library is not indexed
+	 */
+	Set<String> getDirectories(String library) {
+		return this.libraries.get(library);
+	}
+
+	/**
+	 * Return the directory used to look up the given entry or resource name. For
+	 * directory names this is the parent directory.
+	 * @param name the entry name
+	 * @return the directory, ending with {@code /}, or an empty string for the root
+	 */
+	static String getDirectory(String name) {
+		int end = name.endsWith("/") ? name.length() - 1 : name.length();
+		return name.substring(0, name.lastIndexOf('/', end - 1) + 1);
+	}
+
+	static PackagesIndexFile loadIfPossible(InputStream inputStream) throws IOException {
+		if (inputStream == null) {
+			return null;
+		}
+		try (BufferedReader reader = new BufferedReader(
+				new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+			return new PackagesIndexFile(reader);
+		}
+	}
+
+}
@@ -35,6 +35,7 @@ import java.util.Iterator;
 import java.util.UUID;
 import java.util.jar.JarEntry;
 import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
 
 import com.maplecloudy.osrc.boot.loader.jar.JarFile;
 
@@ -91,6 +92,17 @@ public class JarFileArchive implements Archive {
 		return this.jarFile.getManifest();
 	}
 
+	/**
+	 * Return an input stream for the named entry of the archive.
+	 * @param name the entry name
+	 * @return the input stream or {@code null} if there is no such entry
+	 * @throws IOException on IO error
+	 */
+	public InputStream getInputStream(String name) throws IOException {
+		ZipEntry entry = this.jarFile.getEntry(name);
+		return (entry != null) ? this.jarFile.getInputStream(entry) : null;
+	}
+
 	@Override
 	public Iterator<Archive> getNestedArchives(EntryFilter searchFilter, EntryFilter includeFilter) throws IOException {
 		return new NestedArchiveIterator(this.jarFile.iterator(), searchFilter, includeFilter);
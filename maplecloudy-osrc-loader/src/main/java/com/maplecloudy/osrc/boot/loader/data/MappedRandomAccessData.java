@@ -0,0 +1,245 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.data;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * {@link RandomAccessData} implementation backed by memory mapped regions of a file.
+ * Unlike {@link RandomAccessDataFile}, reads are positional against the mapped buffers
+ * and do not need to hold a lock, so many threads can read concurrently. Files larger
+ * than a single mapping allows are split into fixed size chunks.
+ * <p>
+ * Mapped regions are released by the garbage collector once no longer referenced, so
+ * the underlying file may remain locked (on some platforms) for a short time after it
+ * is no longer used.
+ *
+ * @author osrc
+ */
+public class MappedRandomAccessData implements RandomAccessData {
+
+	private static final int CHUNK_SHIFT = 30;
+
+	private static final long CHUNK_SIZE = 1L << CHUNK_SHIFT;
+
+	private static final long CHUNK_MASK = CHUNK_SIZE - 1;
+
+	private final File file;
+
+	private final ByteBuffer[] chunks;
+
+	private final long offset;
+
+	private final long length;
+
+	/**
+	 * Create a new {@link MappedRandomAccessData} backed by the specified file.
+	 * @param file the underlying file
+	 * @throws IOException if the file cannot be mapped
+	 * @throws IllegalArgumentException if the file is null
+	 */
+	public MappedRandomAccessData(File file) throws IOException {
+		if (file == null) {
+			throw new IllegalArgumentException("File must not be null");
+		}
+		this.file = file;
+		try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+			this.length = channel.size();
+			this.chunks = map(channel, this.length);
+		}
+		this.offset = 0L;
+	}
+
+	/**
+	 * Create a new {@link MappedRandomAccessData} backed by the content of the given
+	 * buffer, for example a direct buffer holding data inflated from the specified file.
+	 * @param file the file the data originates from
+	 * @param buffer the buffer holding the data, from index {@code 0} to its limit
+	 */
+	public MappedRandomAccessData(File file, ByteBuffer buffer) {
+		ByteBuffer chunk = buffer.duplicate();
+		((Buffer) chunk).position(0);
+		this.file = file;
+		this.chunks = new ByteBuffer[] { chunk.slice() };
+		this.offset = 0L;
+		this.length = this.chunks[0].capacity();
+	}
+
+	/**
+	 * Private constructor used to create a {@link #getSubsection(long, long) subsection}.
+	 * @param file the underlying file
+	 * @param chunks the mapped chunks of the underlying file
+	 * @param offset the offset of the section
+	 * @param length the length of the section
+	 */
+	private MappedRandomAccessData(File file, ByteBuffer[] chunks, long offset, long length) {
+		this.file = file;
+		this.chunks = chunks;
+		this.offset = offset;
+		this.length = length;
+	}
+
+	private static ByteBuffer[] map(FileChannel channel, long size) throws IOException {
+		ByteBuffer[] chunks = new ByteBuffer[(int) ((size + CHUNK_MASK) >>> CHUNK_SHIFT)];
+		for (int i = 0; i < chunks.length; i++) {
+			long position = i * CHUNK_SIZE;
+			chunks[i] = channel.map(MapMode.READ_ONLY, position, Math.min(CHUNK_SIZE, size - position));
+		}
+		return chunks;
+	}
+
+	/**
+	 * Returns the underlying File.
+	 * @return the underlying file
+	 */
+	public File getFile() {
+		return this.file;
+	}
+
+	@Override
+	public InputStream getInputStream() throws IOException {
+		return new DataInputStream();
+	}
+
+	@Override
+	public RandomAccessData getSubsection(long offset, long length) {
+		if (offset < 0 || length < 0 || offset + length > this.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		return new MappedRandomAccessData(this.file, this.chunks, this.offset + offset, length);
+	}
+
+	@Override
+	public byte[] read() throws IOException {
+		return read(0, this.length);
+	}
+
+	@Override
+	public byte[] read(long offset, long length) throws IOException {
+		if (offset > this.length) {
+			throw new IndexOutOfBoundsException();
+		}
+		if (offset + length > this.length) {
+			throw new EOFException();
+		}
+		byte[] bytes = new byte[(int) length];
+		read(bytes, offset, 0, bytes.length);
+		return bytes;
+	}
+
+	private int readByte(long position) {
+		if (position >= this.length) {
+			return -1;
+		}
+		long absolute = this.offset + position;
+		return this.chunks[(int) (absolute >>> CHUNK_SHIFT)].get((int) (absolute & CHUNK_MASK)) & 0xFF;
+	}
+
+	private void read(byte[] bytes, long position, int offset, int length) {
+		long absolute = this.offset + position;
+		while (length > 0) {
+			// Work on a duplicate so that concurrent readers never share a position
+			ByteBuffer chunk = this.chunks[(int) (absolute >>> CHUNK_SHIFT)].duplicate();
+			int chunkPosition = (int) (absolute & CHUNK_MASK);
+			int amount = Math.min(length, chunk.capacity() - chunkPosition);
+			((Buffer) chunk).position(chunkPosition);
+			chunk.get(bytes, offset, amount);
+			absolute += amount;
+			offset += amount;
+			length -= amount;
+		}
+	}
+
+	@Override
+	public long getSize() {
+		return this.length;
+	}
+
+	/**
+	 * {@link InputStream} implementation for the {@link MappedRandomAccessData}.
+	 */
+	private class DataInputStream extends InputStream {
+
+		private long position;
+
+		@Override
+		public int read() throws IOException {
+			int read = MappedRandomAccessData.this.readByte(this.position);
+			if (read > -1) {
+				this.position++;
+			}
+			return read;
+		}
+
+		@Override
+		public int read(byte[] b) throws IOException {
+			return read(b, 0, (b != null) ? b.length : 0);
+		}
+
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			if (b == null) {
+				throw new NullPointerException("Bytes must not be null");
+			}
+			if (len == 0) {
+				return 0;
+			}
+			int cappedLen = cap(len);
+			if (cappedLen <= 0) {
+				return -1;
+			}
+			MappedRandomAccessData.this.read(b, this.position, off, cappedLen);
+			this.position += cappedLen;
+			return cappedLen;
+		}
+
+		@Override
+		public long skip(long n) throws IOException {
+			if (n <= 0) {
+				return 0;
+			}
+			int amount = cap(n);
+			this.position += amount;
+			return amount;
+		}
+
+		@Override
+		public int available() throws IOException {
+			return cap(Integer.MAX_VALUE);
+		}
+
+		/**
+		 * Cap the specified value such that it cannot exceed the number of bytes
+		 * remaining.
+		 * @param n the value to cap
+		 * @return the capped value
+		 */
+		private int cap(long n) {
+			return (int) Math.min(MappedRandomAccessData.this.length - this.position, n);
+		}
+
+	}
+
+}
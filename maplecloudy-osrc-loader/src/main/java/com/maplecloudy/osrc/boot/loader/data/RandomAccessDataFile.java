@@ -22,6 +22,12 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedByInterruptException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.StandardOpenOption;
 
 /**
  * {@link RandomAccessData} implementation backed by a {@link RandomAccessFile}.
@@ -202,6 +208,12 @@ public class RandomAccessDataFile implements RandomAccessData {
 
 	}
 
+	/**
+	 * Access to the underlying file. Reads are positional {@link FileChannel} reads that
+	 * do not need to hold a lock, so many threads can read from the same file
+	 * concurrently. A thread that has been interrupted falls back to the lock guarded
+	 * {@link RandomAccessFile} since interrupting a channel read closes the channel.
+	 */
 	private static final class FileAccess {
 
 		private final Object monitor = new Object();
@@ -210,12 +222,27 @@ public class RandomAccessDataFile implements RandomAccessData {
 
 		private RandomAccessFile randomAccessFile;
 
+		private volatile FileChannel fileChannel;
+
 		private FileAccess(File file) {
 			this.file = file;
 			openIfNecessary();
 		}
 
 		private int read(byte[] bytes, long position, int offset, int length) throws IOException {
+			if (!Thread.currentThread().isInterrupted()) {
+				try {
+					return getFileChannel().read(ByteBuffer.wrap(bytes, offset, length), position);
+				}
+				catch (ClosedByInterruptException ex) {
+					// Interrupted while reading, repaired by the next channel read
+				}
+				catch (ClosedChannelException ex) {
+					// Closed by an interrupted read on another thread
+					repairFileChannel();
+					return read(bytes, position, offset, length);
+				}
+			}
 			synchronized (this.monitor) {
 				openIfNecessary();
 				this.randomAccessFile.seek(position);
@@ -223,16 +250,41 @@ public class RandomAccessDataFile implements RandomAccessData {
 			}
 		}
 
+		private FileChannel getFileChannel() throws IOException {
+			FileChannel fileChannel = this.fileChannel;
+			if (fileChannel == null) {
+				synchronized (this.monitor) {
+					openIfNecessary();
+					fileChannel = this.fileChannel;
+				}
+			}
+			return fileChannel;
+		}
+
+		private void repairFileChannel() throws IOException {
+			synchronized (this.monitor) {
+				if (this.fileChannel != null && !this.fileChannel.isOpen()) {
+					this.fileChannel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ);
+				}
+			}
+		}
+
 		private void openIfNecessary() {
-			if (this.randomAccessFile == null) {
-				try {
+			try {
+				if (this.randomAccessFile == null) {
 					this.randomAccessFile = new RandomAccessFile(this.file, "r");
 				}
-				catch (FileNotFoundException ex) {
-					throw new IllegalArgumentException(
-							String.format("File %s must exist", this.file.getAbsolutePath()));
+				if (this.fileChannel == null) {
+					this.fileChannel = FileChannel.open(this.file.toPath(), StandardOpenOption.READ);
 				}
 			}
+			catch (FileNotFoundException | NoSuchFileException ex) {
+				throw new IllegalArgumentException(
+						String.format("File %s must exist", this.file.getAbsolutePath()));
+			}
+			catch (IOException ex) {
+				throw new IllegalStateException(ex);
+			}
 		}
 
 		private void close() throws IOException {
@@ -241,15 +293,17 @@ public class RandomAccessDataFile implements RandomAccessData {
 					this.randomAccessFile.close();
 					this.randomAccessFile = null;
 				}
+				if (this.fileChannel != null) {
+					this.fileChannel.close();
+					this.fileChannel = null;
+				}
 			}
 		}
 
 		private int readByte(long position) throws IOException {
-			synchronized (this.monitor) {
-				openIfNecessary();
-				this.randomAccessFile.seek(position);
-				return this.randomAccessFile.read();
-			}
+			byte[] bytes = new byte[1];
+			int read = read(bytes, position, 0, 1);
+			return (read > 0) ? bytes[0] & 0xFF : -1;
 		}
 
 	}
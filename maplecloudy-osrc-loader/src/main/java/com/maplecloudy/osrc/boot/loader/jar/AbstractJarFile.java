@@ -22,6 +22,7 @@ import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.security.Permission;
+import java.util.zip.ZipEntry;
 
 /**
  * Base class for extended variants of {@link java.util.jar.JarFile}.
@@ -66,6 +67,15 @@ abstract class AbstractJarFile extends java.util.jar.JarFile {
 	 */
 	abstract InputStream getInputStream() throws IOException;
 
+	/**
+	 * Return the uncompressed content of the given entry, read directly into an array of
+	 * the exact size.
+	 * @param entry the entry
+	 * @return the entry content or {@code null} if it must be read using a stream
+	 * @throws IOException on IO error
+	 */
+	abstract byte[] getBytes(ZipEntry entry) throws IOException;
+
 	/**
 	 * The type of a {@link JarFile}.
 	 */
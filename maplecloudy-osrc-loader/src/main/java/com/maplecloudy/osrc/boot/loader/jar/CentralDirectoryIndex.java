@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.jar;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * A precomputed index of the central directory of a nested jar. The index is written by
+ * the repackager alongside each nested library and contains the entry name hash codes
+ * (in sorted order), the matching central directory offsets and the original entry
+ * positions, so that {@link JarFileEntries} can be populated without parsing every
+ * {@link CentralDirectoryFileHeader} and sorting the results.
+ * <p>
+ * An index is only used when it was generated from the exact same nested jar, which is
+ * checked using the CRC of the nested entry and the number of central directory records.
+ *
+ * @author osrc
+ * @see CentralDirectoryParser
+ */
+final class CentralDirectoryIndex {
+
+	private static final String LOCATION = "META-INF/osrc/entries/";
+
+	private static final String EXTENSION = ".idx";
+
+	private static final int SIGNATURE = 0x4f534549;
+
+	private static final int VERSION = 1;
+
+	private static final int SIGNED_FLAG = 0x01;
+
+	private final int numberOfRecords;
+
+	private final boolean signed;
+
+	private final int[] hashCodes;
+
+	private final int[] centralDirectoryOffsets;
+
+	private final int[] positions;
+
+	private CentralDirectoryIndex(int numberOfRecords, boolean signed, int[] hashCodes,
+			int[] centralDirectoryOffsets, int[] positions) {
+		this.numberOfRecords = numberOfRecords;
+		this.signed = signed;
+		this.hashCodes = hashCodes;
+		this.centralDirectoryOffsets = centralDirectoryOffsets;
+		this.positions = positions;
+	}
+
+	/**
+	 * Return if this index describes the central directory of the given end record.
+	 * @param endRecord the end record of the archive being opened
+	 * @return {@code true} if the index can be used in place of parsing the entries
+	 */
+	boolean isFor(CentralDirectoryEndRecord endRecord) {
+		return !endRecord.isZip64() && endRecord.getNumberOfRecords() == this.numberOfRecords;
+	}
+
+	boolean isSigned() {
+		return this.signed;
+	}
+
+	int getSize() {
+		return this.hashCodes.length;
+	}
+
+	int[] getHashCodes() {
+		return this.hashCodes;
+	}
+
+	int[] getCentralDirectoryOffsets() {
+		return this.centralDirectoryOffsets;
+	}
+
+	int[] getPositions() {
+		return this.positions;
+	}
+
+	/**
+	 * Return the name of the entry that holds the index for the given nested jar entry.
+	 * @param nestedJarName the name of the nested jar entry
+	 * @return the index entry name
+	 */
+	static String getLocation(String nestedJarName) {
+		return LOCATION + nestedJarName + EXTENSION;
+	}
+
+	/**
+	 * Load an index from the given stream, returning {@code null} if the stream is
+	 * {@code null} or does not contain a valid index for a nested jar with the given CRC.
+	 * The stream is always closed.
+	 * @param inputStream the index stream or {@code null}
+	 * @param crc the CRC of the nested jar entry
+	 * @return the index or {@code null}
+	 */
+	static CentralDirectoryIndex load(InputStream inputStream, long crc) {
+		if (inputStream == null) {
+			return null;
+		}
+		try (DataInputStream in = new DataInputStream(new BufferedInputStream(inputStream))) {
+			if (in.readInt() != SIGNATURE || in.readInt() != VERSION || in.readInt() != (int) crc) {
+				return null;
+			}
+			int numberOfRecords = in.readInt();
+			int size = in.readInt();
+			boolean signed = (in.readByte() & SIGNED_FLAG) != 0;
+			if (size < 0 || size > numberOfRecords) {
+				return null;
+			}
+			return new CentralDirectoryIndex(numberOfRecords, signed, readInts(in, size), readInts(in, size),
+					readInts(in, size));
+		}
+		catch (IOException ex) {
+			return null;
+		}
+	}
+
+	private static int[] readInts(DataInputStream in, int size) throws IOException {
+		int[] values = new int[size];
+		for (int i = 0; i < size; i++) {
+			values[i] = in.readInt();
+		}
+		return values;
+	}
+
+}
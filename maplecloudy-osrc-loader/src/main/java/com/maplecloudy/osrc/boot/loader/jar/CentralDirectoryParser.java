@@ -48,14 +48,33 @@ class CentralDirectoryParser {
 	 * @throws IOException on error
 	 */
 	RandomAccessData parse(RandomAccessData data, boolean skipPrefixBytes) throws IOException {
+		return parse(data, skipPrefixBytes, null);
+	}
+
+	/**
+	 * Parse the source data, triggering {@link CentralDirectoryVisitor visitors}. If the
+	 * given index matches the data it is visited instead of the individual entries.
+	 * @param data the source data
+	 * @param skipPrefixBytes if prefix bytes should be skipped
+	 * @param index a precomputed index of the central directory or {@code null}
+	 * @return the actual archive data without any prefix bytes
+	 * @throws IOException on error
+	 */
+	RandomAccessData parse(RandomAccessData data, boolean skipPrefixBytes, CentralDirectoryIndex index)
+			throws IOException {
 		CentralDirectoryEndRecord endRecord = new CentralDirectoryEndRecord(data);
 		if (skipPrefixBytes) {
 			data = getArchiveData(endRecord, data);
 		}
 		RandomAccessData centralDirectoryData = endRecord.getCentralDirectory(data);
 		visitStart(endRecord, centralDirectoryData);
-		parseEntries(endRecord, centralDirectoryData);
-		visitEnd();
+		if (index != null && index.isFor(endRecord)) {
+			visitIndex(index);
+		}
+		else {
+			parseEntries(endRecord, centralDirectoryData);
+			visitEnd();
+		}
 		return data;
 	}
 
@@ -92,6 +111,12 @@ class CentralDirectoryParser {
 		}
 	}
 
+	private void visitIndex(CentralDirectoryIndex index) {
+		for (CentralDirectoryVisitor visitor : this.visitors) {
+			visitor.visitIndex(index);
+		}
+	}
+
 	private void visitEnd() {
 		for (CentralDirectoryVisitor visitor : this.visitors) {
 			visitor.visitEnd();
@@ -29,6 +29,13 @@ interface CentralDirectoryVisitor {
 
 	void visitFileHeader(CentralDirectoryFileHeader fileHeader, long dataOffset);
 
+	/**
+	 * Called instead of {@link #visitFileHeader} and {@link #visitEnd()} when a valid
+	 * {@link CentralDirectoryIndex} is available for the data being parsed.
+	 * @param index the precomputed index
+	 */
+	void visitIndex(CentralDirectoryIndex index);
+
 	void visitEnd();
 
 }
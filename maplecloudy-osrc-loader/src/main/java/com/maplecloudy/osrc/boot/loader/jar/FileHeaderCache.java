@@ -0,0 +1,129 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.jar;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.maplecloudy.osrc.boot.loader.util.SystemPropertyUtils;
+
+/**
+ * Lock-free cache of the {@link FileHeader FileHeaders} of a {@link JarFileEntries}
+ * instance, keyed by entry index. The cache is direct mapped: each entry index maps to a
+ * single slot and a newer entry simply replaces whatever occupied that slot, so lookups
+ * and updates never block. Hit and miss counts are aggregated across all caches so that
+ * the size can be tuned for an application.
+ *
+ * @author osrc
+ * @see JarFile#getEntryCacheHitCount()
+ * @see JarFile#getEntryCacheMissCount()
+ */
+final class FileHeaderCache {
+
+	/**
+	 * Property used to configure the number of entries cached per jar file. Rounded up to
+	 * a power of two, {@code 0} disables caching.
+	 */
+	static final String SIZE_PROPERTY = "loader.entry.cache.size";
+
+	private static final int DEFAULT_SIZE = 128;
+
+	private static final int MAXIMUM_SIZE = 1 << 16;
+
+	private static final int SIZE = getSize();
+
+	private static final LongAdder hits = new LongAdder();
+
+	private static final LongAdder misses = new LongAdder();
+
+	private final AtomicReferenceArray<Slot> slots;
+
+	private final int mask;
+
+	FileHeaderCache(int numberOfEntries) {
+		int size = Math.min(SIZE, roundUpToPowerOfTwo(numberOfEntries));
+		this.slots = (size > 0) ? new AtomicReferenceArray<>(size) : null;
+		this.mask = size - 1;
+	}
+
+	FileHeader get(int index) {
+		if (this.slots == null) {
+			return null;
+		}
+		Slot slot = this.slots.get(index & this.mask);
+		if (slot != null && slot.index == index) {
+			hits.increment();
+			return slot.fileHeader;
+		}
+		misses.increment();
+		return null;
+	}
+
+	void put(int index, FileHeader fileHeader) {
+		if (this.slots != null) {
+			this.slots.lazySet(index & this.mask, new Slot(index, fileHeader));
+		}
+	}
+
+	void clear() {
+		if (this.slots != null) {
+			for (int i = 0; i < this.slots.length(); i++) {
+				this.slots.set(i, null);
+			}
+		}
+	}
+
+	static long getHitCount() {
+		return hits.sum();
+	}
+
+	static long getMissCount() {
+		return misses.sum();
+	}
+
+	private static int getSize() {
+		String size = SystemPropertyUtils.getProperty(SIZE_PROPERTY);
+		try {
+			return (size != null) ? roundUpToPowerOfTwo(Math.min(Integer.parseInt(size.trim()), MAXIMUM_SIZE))
+					: DEFAULT_SIZE;
+		}
+		catch (NumberFormatException ex) {
+			return DEFAULT_SIZE;
+		}
+	}
+
+	private static int roundUpToPowerOfTwo(int value) {
+		return (value > 1) ? Integer.highestOneBit(value - 1) << 1 : Math.max(value, 0);
+	}
+
+	/**
+	 * A single cache slot.
+	 */
+	private static final class Slot {
+
+		private final int index;
+
+		private final FileHeader fileHeader;
+
+		Slot(int index, FileHeader fileHeader) {
+			this.index = index;
+			this.fileHeader = fileHeader;
+		}
+
+	}
+
+}
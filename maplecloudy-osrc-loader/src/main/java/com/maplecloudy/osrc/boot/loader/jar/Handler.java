@@ -20,7 +20,6 @@ import java.io.File;
 import java.io.IOException;
 import java.lang.ref.SoftReference;
 import java.net.MalformedURLException;
-import java.net.URI;
 import java.net.URL;
 import java.net.URLConnection;
 import java.net.URLStreamHandler;
@@ -28,7 +27,6 @@ import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.logging.Level;
 import java.util.logging.Logger;
-import java.util.regex.Pattern;
 
 /**
  * {@link URLStreamHandler} for Spring Boot loader {@link JarFile}s.
@@ -51,12 +49,8 @@ public class Handler extends URLStreamHandler {
 
 	private static final String SEPARATOR = "!/";
 
-	private static final Pattern SEPARATOR_PATTERN = Pattern.compile(SEPARATOR, Pattern.LITERAL);
-
 	private static final String CURRENT_DIR = "/./";
 
-	private static final Pattern CURRENT_DIR_PATTERN = Pattern.compile(CURRENT_DIR, Pattern.LITERAL);
-
 	private static final String PARENT_DIR = "/../";
 
 	private static final String PROTOCOL_HANDLER = "java.protocol.handler.pkgs";
@@ -133,7 +127,10 @@ public class Handler extends URLStreamHandler {
 		String file = url.getFile();
 		if (isTomcatWarUrl(file)) {
 			file = file.substring(TOMCAT_WARFILE_PROTOCOL.length());
-			file = file.replaceFirst("\\*/", "!/");
+			int warSeparatorIndex = file.indexOf("*/");
+			if (warSeparatorIndex != -1) {
+				file = file.substring(0, warSeparatorIndex) + SEPARATOR + file.substring(warSeparatorIndex + 2);
+			}
 			try {
 				URLConnection connection = openConnection(new URL("jar:file:" + file));
 				connection.getInputStream().close();
@@ -235,7 +232,7 @@ public class Handler extends URLStreamHandler {
 			throw new IllegalArgumentException("No !/ in spec '" + spec + "'");
 		}
 		try {
-			new URL(spec.substring(0, separatorIndex));
+			JarUrlCache.getRootUrl(spec.substring(0, separatorIndex));
 			return spec;
 		}
 		catch (MalformedURLException ex) {
@@ -303,7 +300,7 @@ public class Handler extends URLStreamHandler {
 	}
 
 	private String replaceCurrentDir(String file) {
-		return CURRENT_DIR_PATTERN.matcher(file).replaceAll("/");
+		return replace(file, CURRENT_DIR, "/");
 	}
 
 	@Override
@@ -320,7 +317,7 @@ public class Handler extends URLStreamHandler {
 		String source = file.substring(0, separatorIndex);
 		String entry = canonicalize(file.substring(separatorIndex + 2));
 		try {
-			result += new URL(source).hashCode();
+			result += JarUrlCache.getRootUrl(source).hashCode();
 		}
 		catch (MalformedURLException ex) {
 			result += source.hashCode();
@@ -351,7 +348,7 @@ public class Handler extends URLStreamHandler {
 		String root1 = u1.getFile().substring(0, separator1);
 		String root2 = u2.getFile().substring(0, separator2);
 		try {
-			return super.sameFile(new URL(root1), new URL(root2));
+			return super.sameFile(JarUrlCache.getRootUrl(root1), JarUrlCache.getRootUrl(root2));
 		}
 		catch (MalformedURLException ex) {
 			// Continue
@@ -360,7 +357,22 @@ public class Handler extends URLStreamHandler {
 	}
 
 	private String canonicalize(String path) {
-		return SEPARATOR_PATTERN.matcher(path).replaceAll("/");
+		return replace(path, SEPARATOR, "/");
+	}
+
+	private String replace(String source, String target, String replacement) {
+		int index = source.indexOf(target);
+		if (index == -1) {
+			return source;
+		}
+		StringBuilder result = new StringBuilder(source.length());
+		int start = 0;
+		while (index != -1) {
+			result.append(source, start, index).append(replacement);
+			start = index + target.length();
+			index = source.indexOf(target, start);
+		}
+		return result.append(source, start, source.length()).toString();
 	}
 
 	public JarFile getRootJarFileFromUrl(URL url) throws IOException {
@@ -378,7 +390,7 @@ public class Handler extends URLStreamHandler {
 			if (!name.startsWith(FILE_PROTOCOL)) {
 				throw new IllegalStateException("Not a file URL");
 			}
-			File file = new File(URI.create(name));
+			File file = JarUrlCache.getRootFile(name);
 			Map<File, JarFile> cache = rootFileCache.get();
 			JarFile result = (cache != null) ? cache.get(file) : null;
 			if (result == null) {
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.jar;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Inflater;
+
+import com.maplecloudy.osrc.boot.loader.util.SystemPropertyUtils;
+
+/**
+ * Bounded, lock-free pool of {@link Inflater Inflaters} and their input buffers, shared
+ * by all {@link ZipInflaterInputStream ZipInflaterInputStreams}. Class loading opens a
+ * compressed stream for almost every class so reusing inflaters avoids allocating (and
+ * later freeing) their native memory each time. Inflaters released once the pool is full
+ * are ended immediately. Hit and miss counts are aggregated so that the size can be tuned
+ * for an application.
+ *
+ * @author osrc
+ * @see JarFile#getInflaterPoolHitCount()
+ * @see JarFile#getInflaterPoolMissCount()
+ */
+final class InflaterPool {
+
+	/**
+	 * Property used to configure the maximum number of pooled inflaters, {@code 0}
+	 * disables pooling.
+	 */
+	static final String SIZE_PROPERTY = "loader.inflater.pool.size";
+
+	private static final int DEFAULT_SIZE = 16;
+
+	private static final int MAXIMUM_SIZE = 1024;
+
+	private static final int BUFFER_SIZE = 8192;
+
+	private static final AtomicReferenceArray<PooledInflater> pool = new AtomicReferenceArray<>(getSize());
+
+	private static final LongAdder hits = new LongAdder();
+
+	private static final LongAdder misses = new LongAdder();
+
+	private InflaterPool() {
+	}
+
+	/**
+	 * Acquire an inflater, either from the pool or newly created.
+	 * @param bufferSize the buffer size to use when pooling is disabled
+	 * @return the inflater
+	 */
+	static PooledInflater acquire(int bufferSize) {
+		int size = pool.length();
+		if (size == 0) {
+			return new PooledInflater(new byte[bufferSize]);
+		}
+		int start = getStart(size);
+		for (int i = 0; i < size; i++) {
+			int slot = (start + i) % size;
+			PooledInflater inflater = pool.get(slot);
+			if (inflater != null && pool.compareAndSet(slot, inflater, null)) {
+				hits.increment();
+				return inflater;
+			}
+		}
+		misses.increment();
+		return new PooledInflater(new byte[BUFFER_SIZE]);
+	}
+
+	/**
+	 * Release an inflater that is no longer used, returning it to the pool if there is
+	 * space or ending it otherwise.
+	 * @param inflater the inflater to release
+	 */
+	static void release(PooledInflater inflater) {
+		int size = pool.length();
+		if (size > 0) {
+			inflater.getInflater().reset();
+			int start = getStart(size);
+			for (int i = 0; i < size; i++) {
+				int slot = (start + i) % size;
+				if (pool.get(slot) == null && pool.compareAndSet(slot, null, inflater)) {
+					return;
+				}
+			}
+		}
+		inflater.getInflater().end();
+	}
+
+	static long getHitCount() {
+		return hits.sum();
+	}
+
+	static long getMissCount() {
+		return misses.sum();
+	}
+
+	private static int getStart(int size) {
+		// Spread threads over the slots so that they rarely compete for the same one
+		return (int) (Thread.currentThread().getId() % size);
+	}
+
+	private static int getSize() {
+		String size = SystemPropertyUtils.getProperty(SIZE_PROPERTY);
+		try {
+			return (size != null) ? Math.max(0, Math.min(Integer.parseInt(size.trim()), MAXIMUM_SIZE))
+					: DEFAULT_SIZE;
+		}
+		catch (NumberFormatException ex) {
+			return DEFAULT_SIZE;
+		}
+	}
+
+	/**
+	 * An {@link Inflater} for raw deflate data together with its input buffer.
+	 */
+	static final class PooledInflater {
+
+		private final Inflater inflater = new Inflater(true);
+
+		private final byte[] buffer;
+
+		private PooledInflater(byte[] buffer) {
+			this.buffer = buffer;
+		}
+
+		Inflater getInflater() {
+			return this.inflater;
+		}
+
+		byte[] getBuffer() {
+			return this.buffer;
+		}
+
+	}
+
+}
@@ -36,8 +36,10 @@ import java.util.stream.Stream;
 import java.util.stream.StreamSupport;
 import java.util.zip.ZipEntry;
 
+import com.maplecloudy.osrc.boot.loader.data.MappedRandomAccessData;
 import com.maplecloudy.osrc.boot.loader.data.RandomAccessData;
 import com.maplecloudy.osrc.boot.loader.data.RandomAccessDataFile;
+import com.maplecloudy.osrc.boot.loader.util.SystemPropertyUtils;
 
 /**
  * Extended variant of {@link java.util.jar.JarFile} that behaves in the same way but
@@ -67,6 +69,12 @@ public class JarFile extends AbstractJarFile implements Iterable<java.util.jar.J
 
 	private static final String READ_ACTION = "read";
 
+	/**
+	 * Property used to read root jar files through {@link MappedRandomAccessData} rather
+	 * than a lock-guarded {@link java.io.RandomAccessFile}.
+	 */
+	public static final String MAPPED_DATA_PROPERTY = "loader.data.mapped";
+
 	private final RandomAccessDataFile rootFile;
 
 	private final String pathFromRoot;
@@ -83,7 +91,7 @@ public class JarFile extends AbstractJarFile implements Iterable<java.util.jar.J
 
 	private Supplier<Manifest> manifestSupplier;
 
-	private SoftReference<Manifest> manifest;
+	private volatile SoftReference<Manifest> manifest;
 
 	private boolean signed;
 
@@ -91,6 +99,8 @@ public class JarFile extends AbstractJarFile implements Iterable<java.util.jar.J
 
 	private volatile boolean closed;
 
+	private final JarUrlCache urlCache = new JarUrlCache();
+
 	/**
 	 * Create a new {@link JarFile} backed by the specified file.
 	 * @param file the root jar file
@@ -106,7 +116,7 @@ public class JarFile extends AbstractJarFile implements Iterable<java.util.jar.J
 	 * @throws IOException if the file cannot be read
 	 */
 	JarFile(RandomAccessDataFile file) throws IOException {
-		this(file, "", file, JarFileType.DIRECT);
+		this(file, "", getRootData(file), JarFileType.DIRECT);
 	}
 
 	/**
@@ -120,11 +130,11 @@ public class JarFile extends AbstractJarFile implements Iterable<java.util.jar.J
 	 */
 	private JarFile(RandomAccessDataFile rootFile, String pathFromRoot, RandomAccessData data, JarFileType type)
 			throws IOException {
-		this(rootFile, pathFromRoot, data, null, type, null);
+		this(rootFile, pathFromRoot, data, null, type, null, null);
 	}
 
 	private JarFile(RandomAccessDataFile rootFile, String pathFromRoot, RandomAccessData data, JarEntryFilter filter,
-			JarFileType type, Supplier<Manifest> manifestSupplier) throws IOException {
+			JarFileType type, Supplier<Manifest> manifestSupplier, CentralDirectoryIndex index) throws IOException {
 		super(rootFile.getFile());
 		if (System.getSecurityManager() == null) {
 			super.close();
@@ -136,7 +146,7 @@ public class JarFile extends AbstractJarFile implements Iterable<java.util.jar.J
 		this.type = type;
 		parser.addVisitor(centralDirectoryVisitor());
 		try {
-			this.data = parser.parse(data, filter == null);
+			this.data = parser.parse(data, filter == null, index);
 		}
 		catch (RuntimeException ex) {
 			try {
@@ -160,6 +170,13 @@ public class JarFile extends AbstractJarFile implements Iterable<java.util.jar.J
 		};
 	}
 
+	private static RandomAccessData getRootData(RandomAccessDataFile file) throws IOException {
+		if (Boolean.parseBoolean(SystemPropertyUtils.getProperty(MAPPED_DATA_PROPERTY))) {
+			return new MappedRandomAccessData(file.getFile());
+		}
+		return file;
+	}
+
 	private CentralDirectoryVisitor centralDirectoryVisitor() {
 		return new CentralDirectoryVisitor() {
 
@@ -176,6 +193,11 @@ public class JarFile extends AbstractJarFile implements Iterable<java.util.jar.J
 				}
 			}
 
+			@Override
+			public void visitIndex(CentralDirectoryIndex index) {
+				JarFile.this.signed = index.isSigned();
+			}
+
 			@Override
 			public void visitEnd() {
 			}
@@ -259,7 +281,7 @@ public class JarFile extends AbstractJarFile implements Iterable<java.util.jar.J
 	}
 
 	@Override
-	public synchronized InputStream getInputStream(ZipEntry entry) throws IOException {
+	public InputStream getInputStream(ZipEntry entry) throws IOException {
 		ensureOpen();
 		if (entry instanceof JarEntry) {
 			return this.entries.getInputStream((JarEntry) entry);
@@ -271,13 +293,32 @@ public class JarFile extends AbstractJarFile implements Iterable<java.util.jar.J
 		return this.entries.getInputStream(name);
 	}
 
+	@Override
+	byte[] getBytes(ZipEntry entry) throws IOException {
+		ensureOpen();
+		return (entry instanceof JarEntry) ? this.entries.getBytes((JarEntry) entry) : null;
+	}
+
+	/**
+	 * Return the uncompressed content of an entry of the given jar file, read directly
+	 * into an array of the exact size when the jar file was opened by the loader. This
+	 * avoids the streams that {@link #getInputStream(ZipEntry)} creates.
+	 * @param jarFile the jar file, for example from a {@code jar:} URL connection
+	 * @param entry the entry
+	 * @return the entry content or {@code null} if it must be read using a stream
+	 * @throws IOException on IO error
+	 */
+	public static byte[] getBytes(java.util.jar.JarFile jarFile, ZipEntry entry) throws IOException {
+		return (jarFile instanceof AbstractJarFile) ? ((AbstractJarFile) jarFile).getBytes(entry) : null;
+	}
+
 	/**
 	 * Return a nested {@link JarFile} loaded from the specified entry.
 	 * @param entry the zip entry
 	 * @return a {@link JarFile} for the entry
 	 * @throws IOException if the nested jar file cannot be read
 	 */
-	public synchronized JarFile getNestedJarFile(ZipEntry entry) throws IOException {
+	public JarFile getNestedJarFile(ZipEntry entry) throws IOException {
 		return getNestedJarFile((JarEntry) entry);
 	}
 
@@ -287,7 +328,7 @@ public class JarFile extends AbstractJarFile implements Iterable<java.util.jar.J
 	 * @return a {@link JarFile} for the entry
 	 * @throws IOException if the nested jar file cannot be read
 	 */
-	public synchronized JarFile getNestedJarFile(JarEntry entry) throws IOException {
+	public JarFile getNestedJarFile(JarEntry entry) throws IOException {
 		try {
 			return createJarFileFromEntry(entry);
 		}
@@ -312,19 +353,26 @@ public class JarFile extends AbstractJarFile implements Iterable<java.util.jar.J
 			return null;
 		};
 		return new JarFile(this.rootFile, this.pathFromRoot + "!/" + entry.getName().substring(0, name.length() - 1),
-				this.data, filter, JarFileType.NESTED_DIRECTORY, this.manifestSupplier);
+				this.data, filter, JarFileType.NESTED_DIRECTORY, this.manifestSupplier, null);
 	}
 
 	private JarFile createJarFileFromFileEntry(JarEntry entry) throws IOException {
-		if (entry.getMethod() != ZipEntry.STORED) {
-			throw new IllegalStateException(
-					"Unable to open nested entry '" + entry.getName() + "'. It has been compressed and nested "
-							+ "jar files must be stored without compression. Please check the "
-							+ "mechanism used to create your executable jar file");
+		RandomAccessData entryData;
+		if (entry.getMethod() == ZipEntry.STORED) {
+			entryData = this.entries.getEntryData(entry.getName());
 		}
-		RandomAccessData entryData = this.entries.getEntryData(entry.getName());
-		return new JarFile(this.rootFile, this.pathFromRoot + "!/" + entry.getName(), entryData,
-				JarFileType.NESTED_JAR);
+		else if (entry.getMethod() == ZipEntry.DEFLATED) {
+			// Compressed nested jars are inflated once and then read like stored ones
+			entryData = NestedJarCache.get(this, entry);
+		}
+		else {
+			throw new IllegalStateException("Unable to open nested entry '" + entry.getName()
+					+ "'. It uses an unsupported compression method " + entry.getMethod());
+		}
+		CentralDirectoryIndex index = CentralDirectoryIndex
+				.load(getInputStream(CentralDirectoryIndex.getLocation(entry.getName())), entry.getCrc());
+		return new JarFile(this.rootFile, this.pathFromRoot + "!/" + entry.getName(), entryData, null,
+				JarFileType.NESTED_JAR, null, index);
 	}
 
 	@Override
@@ -348,6 +396,7 @@ public class JarFile extends AbstractJarFile implements Iterable<java.util.jar.J
 		if (this.type == JarFileType.DIRECT) {
 			this.rootFile.close();
 		}
+		this.urlCache.clear();
 		this.closed = true;
 	}
 
@@ -405,6 +454,66 @@ public class JarFile extends AbstractJarFile implements Iterable<java.util.jar.J
 		this.entries.clearCache();
 	}
 
+	/**
+	 * Return the number of entry lookups, across all jar files, that were served from
+	 * the entry cache. The cache size can be configured using the
+	 * {@code loader.entry.cache.size} property.
+	 * @return the entry cache hit count
+	 */
+	public static long getEntryCacheHitCount() {
+		return FileHeaderCache.getHitCount();
+	}
+
+	/**
+	 * Return the number of entry lookups, across all jar files, that missed the entry
+	 * cache and had to read the central directory.
+	 * @return the entry cache miss count
+	 */
+	public static long getEntryCacheMissCount() {
+		return FileHeaderCache.getMissCount();
+	}
+
+	/**
+	 * Return the number of {@code jar:} URL lookups, across all jar files, that were
+	 * served from the URL cache rather than parsed or resolved again.
+	 * @return the URL cache hit count
+	 */
+	public static long getUrlCacheHitCount() {
+		return JarUrlCache.getHitCount();
+	}
+
+	/**
+	 * Return the number of {@code jar:} URL lookups, across all jar files, that missed the
+	 * URL cache and had to be parsed or resolved.
+	 * @return the URL cache miss count
+	 */
+	public static long getUrlCacheMissCount() {
+		return JarUrlCache.getMissCount();
+	}
+
+	/**
+	 * Return the number of compressed entry reads, across all jar files, that reused a
+	 * pooled inflater. The pool size can be configured using the
+	 * {@code loader.inflater.pool.size} property.
+	 * @return the inflater pool hit count
+	 */
+	public static long getInflaterPoolHitCount() {
+		return InflaterPool.getHitCount();
+	}
+
+	/**
+	 * Return the number of compressed entry reads, across all jar files, that had to
+	 * create a new inflater because the pool was empty.
+	 * @return the inflater pool miss count
+	 */
+	public static long getInflaterPoolMissCount() {
+		return InflaterPool.getMissCount();
+	}
+
+	JarUrlCache getUrlCache() {
+		return this.urlCache;
+	}
+
 	protected String getPathFromRoot() {
 		return this.pathFromRoot;
 	}
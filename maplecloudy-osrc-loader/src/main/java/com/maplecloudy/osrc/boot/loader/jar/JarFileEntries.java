@@ -19,16 +19,16 @@ package com.maplecloudy.osrc.boot.loader.jar;
 import java.io.IOException;
 import java.io.InputStream;
 import java.util.Arrays;
-import java.util.Collections;
 import java.util.Iterator;
-import java.util.LinkedHashMap;
-import java.util.Map;
 import java.util.NoSuchElementException;
 import java.util.jar.Attributes;
 import java.util.jar.Attributes.Name;
 import java.util.jar.JarInputStream;
 import java.util.jar.Manifest;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 
 import com.maplecloudy.osrc.boot.loader.data.RandomAccessData;
 
@@ -53,6 +53,8 @@ class JarFileEntries implements CentralDirectoryVisitor, Iterable<JarEntry> {
 
 	private static final String META_INF_PREFIX = "META-INF/";
 
+	private static final byte[] EXTRA_BYTE = new byte[1];
+
 	private static final Name MULTI_RELEASE = new Name("Multi-Release");
 
 	private static final int BASE_VERSION = 8;
@@ -77,8 +79,6 @@ class JarFileEntries implements CentralDirectoryVisitor, Iterable<JarEntry> {
 
 	private static final char NO_SUFFIX = 0;
 
-	protected static final int ENTRY_CACHE_SIZE = 25;
-
 	private final JarFile jarFile;
 
 	private final JarEntryFilter filter;
@@ -93,19 +93,11 @@ class JarFileEntries implements CentralDirectoryVisitor, Iterable<JarEntry> {
 
 	private int[] positions;
 
-	private Boolean multiReleaseJar;
-
-	private JarEntryCertification[] certifications;
-
-	private final Map<Integer, FileHeader> entriesCache = Collections
-			.synchronizedMap(new LinkedHashMap<Integer, FileHeader>(16, 0.75f, true) {
+	private volatile Boolean multiReleaseJar;
 
-				@Override
-				protected boolean removeEldestEntry(Map.Entry<Integer, FileHeader> eldest) {
-					return size() >= ENTRY_CACHE_SIZE;
-				}
+	private volatile JarEntryCertification[] certifications;
 
-			});
+	private FileHeaderCache entriesCache;
 
 	JarFileEntries(JarFile jarFile, JarEntryFilter filter) {
 		this.jarFile = jarFile;
@@ -122,6 +114,7 @@ class JarFileEntries implements CentralDirectoryVisitor, Iterable<JarEntry> {
 		this.hashCodes = new int[maxSize];
 		this.centralDirectoryOffsets = Offsets.of(endRecord);
 		this.positions = new int[maxSize];
+		this.entriesCache = new FileHeaderCache(maxSize);
 	}
 
 	@Override
@@ -149,6 +142,15 @@ class JarFileEntries implements CentralDirectoryVisitor, Iterable<JarEntry> {
 		}
 	}
 
+	@Override
+	public void visitIndex(CentralDirectoryIndex index) {
+		// The index is already sorted and holds the final positions
+		this.size = index.getSize();
+		this.hashCodes = index.getHashCodes();
+		this.centralDirectoryOffsets = new ZipOffsets(index.getCentralDirectoryOffsets());
+		this.positions = index.getPositions();
+	}
+
 	int getSize() {
 		return this.size;
 	}
@@ -226,6 +228,56 @@ class JarFileEntries implements CentralDirectoryVisitor, Iterable<JarEntry> {
 		return inputStream;
 	}
 
+	/**
+	 * Return the uncompressed content of the given entry read directly into an array of
+	 * the exact size, without creating any intermediate stream.
+	 * @param entry the entry
+	 * @return the entry content or {@code null} if it must be read using a stream
+	 * @throws IOException on IO error
+	 */
+	byte[] getBytes(FileHeader entry) throws IOException {
+		if (entry == null || entry.getSize() < 0 || entry.getSize() > Integer.MAX_VALUE) {
+			return null;
+		}
+		if (entry.getMethod() == ZipEntry.STORED) {
+			return getEntryData(entry).read();
+		}
+		if (entry.getMethod() == ZipEntry.DEFLATED) {
+			return inflate(getEntryData(entry).read(), (int) entry.getSize());
+		}
+		return null;
+	}
+
+	private byte[] inflate(byte[] compressed, int size) throws IOException {
+		byte[] bytes = new byte[size];
+		InflaterPool.PooledInflater pooledInflater = InflaterPool.acquire(0);
+		try {
+			Inflater inflater = pooledInflater.getInflater();
+			inflater.setInput(compressed);
+			boolean extraByteWritten = false;
+			int offset = 0;
+			while (offset < size) {
+				int inflated = inflater.inflate(bytes, offset, size - offset);
+				if (inflated == 0) {
+					if (!inflater.needsInput() || extraByteWritten) {
+						throw new ZipException("Unexpected end of deflated entry data");
+					}
+					// Raw deflate data may need an extra "dummy" byte
+					inflater.setInput(EXTRA_BYTE);
+					extraByteWritten = true;
+				}
+				offset += inflated;
+			}
+			return bytes;
+		}
+		catch (DataFormatException ex) {
+			throw new ZipException(ex.getMessage());
+		}
+		finally {
+			InflaterPool.release(pooledInflater);
+		}
+	}
+
 	RandomAccessData getEntryData(String name) throws IOException {
 		FileHeader entry = getEntry(name, FileHeader.class, false);
 		if (entry == null) {
@@ -441,7 +493,11 @@ class JarFileEntries implements CentralDirectoryVisitor, Iterable<JarEntry> {
 		private final int[] offsets;
 
 		private ZipOffsets(int size) {
-			this.offsets = new int[size];
+			this(new int[size]);
+		}
+
+		private ZipOffsets(int[] offsets) {
+			this.offsets = offsets;
 		}
 
 		@Override
@@ -91,10 +91,15 @@ class JarFileWrapper extends AbstractJarFile {
 	}
 
 	@Override
-	public synchronized InputStream getInputStream(ZipEntry ze) throws IOException {
+	public InputStream getInputStream(ZipEntry ze) throws IOException {
 		return this.parent.getInputStream(ze);
 	}
 
+	@Override
+	byte[] getBytes(ZipEntry entry) throws IOException {
+		return this.parent.getBytes(entry);
+	}
+
 	@Override
 	public String getComment() {
 		return this.parent.getComment();
@@ -242,28 +242,42 @@ final class JarURLConnection extends java.net.JarURLConnection {
 	}
 
 	static JarURLConnection get(URL url, JarFile jarFile) throws IOException {
-		StringSequence spec = new StringSequence(url.getFile());
+		String file = url.getFile();
+		StringSequence spec = new StringSequence(file);
 		int index = indexOfRootSpec(spec, jarFile.getPathFromRoot());
 		if (index == -1) {
 			return (Boolean.TRUE.equals(useFastExceptions.get()) ? NOT_FOUND_CONNECTION
 					: new JarURLConnection(url, null, EMPTY_JAR_ENTRY_NAME));
 		}
-		int separator;
-		while ((separator = spec.indexOf(SEPARATOR, index)) > 0) {
-			JarEntryName entryName = JarEntryName.get(spec.subSequence(index, separator));
-			JarEntry jarEntry = jarFile.getJarEntry(entryName.toCharSequence());
-			if (jarEntry == null) {
-				return JarURLConnection.notFound(jarFile, entryName);
+		int lastSeparator = file.lastIndexOf(SEPARATOR);
+		if (lastSeparator >= index) {
+			// Nested jar files are resolved once per path rather than for every entry
+			JarUrlCache urlCache = jarFile.getUrlCache();
+			String nestedPath = file.substring(index, lastSeparator);
+			JarFile nestedJarFile = urlCache.getNestedJarFile(nestedPath);
+			if (nestedJarFile == null) {
+				nestedJarFile = jarFile;
+				int separator;
+				while ((separator = spec.indexOf(SEPARATOR, index)) > 0 && separator <= lastSeparator) {
+					JarEntryName entryName = JarEntryName.get(spec.subSequence(index, separator));
+					JarEntry jarEntry = nestedJarFile.getJarEntry(entryName.toCharSequence());
+					if (jarEntry == null) {
+						return JarURLConnection.notFound(nestedJarFile, entryName);
+					}
+					nestedJarFile = nestedJarFile.getNestedJarFile(jarEntry);
+					index = separator + SEPARATOR.length();
+				}
+				urlCache.putNestedJarFile(nestedPath, nestedJarFile);
 			}
-			jarFile = jarFile.getNestedJarFile(jarEntry);
-			index = separator + SEPARATOR.length();
+			jarFile = nestedJarFile;
+			index = lastSeparator + SEPARATOR.length();
 		}
 		JarEntryName jarEntryName = JarEntryName.get(spec, index);
 		if (Boolean.TRUE.equals(useFastExceptions.get()) && !jarEntryName.isEmpty()
 				&& !jarFile.containsEntry(jarEntryName.toString())) {
 			return NOT_FOUND_CONNECTION;
 		}
-		return new JarURLConnection(url, new JarFileWrapper(jarFile), jarEntryName);
+		return new JarURLConnection(url, jarFile.getUrlCache().getWrapper(jarFile), jarEntryName);
 	}
 
 	private static int indexOfRootSpec(StringSequence file, String pathFromRoot) {
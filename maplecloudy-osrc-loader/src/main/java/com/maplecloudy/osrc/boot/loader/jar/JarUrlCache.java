@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.jar;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.MalformedURLException;
+import java.net.URI;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Cache of the parsed parts of {@code jar:} URLs so that the {@link Handler} and
+ * {@link JarURLConnection} do not parse the same URL prefixes again for every resource.
+ * Each {@link JarFile} has an instance that holds the nested jar files addressed by its
+ * URLs, keyed by their path (for example {@code BOOT-INF/lib/library.jar}), and the
+ * {@link JarFileWrapper} handed out by its connections. The root URLs and files that URLs
+ * start with are shared, up to a fixed number of entries. Hit and miss counts are
+ * aggregated across all caches.
+ *
+ * @author osrc
+ * @see JarFile#getUrlCacheHitCount()
+ * @see JarFile#getUrlCacheMissCount()
+ */
+final class JarUrlCache {
+
+	private static final int MAXIMUM_ROOTS = 256;
+
+	private static final Map<String, URL> rootUrls = new ConcurrentHashMap<>();
+
+	private static final Map<String, File> rootFiles = new ConcurrentHashMap<>();
+
+	private static final LongAdder hits = new LongAdder();
+
+	private static final LongAdder misses = new LongAdder();
+
+	private final Map<String, JarFile> nestedJarFiles = new ConcurrentHashMap<>();
+
+	private volatile JarFileWrapper wrapper;
+
+	/**
+	 * Return the previously resolved nested jar file with the given path.
+	 * @param path the path of the nested jar file, relative to the owning jar file
+	 * @return the nested jar file or {@code null}
+	 */
+	JarFile getNestedJarFile(String path) {
+		return record(this.nestedJarFiles.get(path));
+	}
+
+	void putNestedJarFile(String path, JarFile jarFile) {
+		this.nestedJarFiles.putIfAbsent(path, jarFile);
+	}
+
+	/**
+	 * Return the wrapper of the given jar file, the owner of this cache. Creating a
+	 * wrapper opens (and reads the central directory of) the root file, so a single
+	 * wrapper is shared by all connections.
+	 * @param jarFile the jar file that owns this cache
+	 * @return the wrapper
+	 * @throws IOException on IO error
+	 */
+	JarFileWrapper getWrapper(JarFile jarFile) throws IOException {
+		JarFileWrapper wrapper = record(this.wrapper);
+		if (wrapper == null) {
+			wrapper = new JarFileWrapper(jarFile);
+			this.wrapper = wrapper;
+		}
+		return wrapper;
+	}
+
+	void clear() {
+		this.nestedJarFiles.clear();
+		this.wrapper = null;
+	}
+
+	/**
+	 * Return the {@link URL} of the given root spec, for example the {@code file:} URL
+	 * before the first {@code !/} of a {@code jar:} URL.
+	 * @param spec the root spec
+	 * @return the URL
+	 * @throws MalformedURLException if the spec is not a valid URL
+	 */
+	static URL getRootUrl(String spec) throws MalformedURLException {
+		URL url = record(rootUrls.get(spec));
+		if (url == null) {
+			url = new URL(spec);
+			putRoot(rootUrls, spec, url);
+		}
+		return url;
+	}
+
+	/**
+	 * Return the {@link File} of the given {@code file:} URL spec.
+	 * @param spec the file URL spec
+	 * @return the file
+	 */
+	static File getRootFile(String spec) {
+		File file = record(rootFiles.get(spec));
+		if (file == null) {
+			file = new File(URI.create(spec));
+			putRoot(rootFiles, spec, file);
+		}
+		return file;
+	}
+
+	private static <V> void putRoot(Map<String, V> roots, String spec, V value) {
+		if (roots.size() < MAXIMUM_ROOTS) {
+			roots.putIfAbsent(spec, value);
+		}
+	}
+
+	private static <V> V record(V value) {
+		if (value != null) {
+			hits.increment();
+		}
+		else {
+			misses.increment();
+		}
+		return value;
+	}
+
+	static long getHitCount() {
+		return hits.sum();
+	}
+
+	static long getMissCount() {
+		return misses.sum();
+	}
+
+}
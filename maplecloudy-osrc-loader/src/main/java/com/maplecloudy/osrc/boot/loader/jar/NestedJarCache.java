@@ -0,0 +1,271 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.loader.jar;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.CRC32;
+
+import com.maplecloudy.osrc.boot.loader.data.MappedRandomAccessData;
+import com.maplecloudy.osrc.boot.loader.data.RandomAccessData;
+import com.maplecloudy.osrc.boot.loader.data.RandomAccessDataFile;
+import com.maplecloudy.osrc.boot.loader.util.SystemPropertyUtils;
+
+/**
+ * Inflated content of compressed nested jars. A nested jar is inflated once, on first
+ * access, into a file of a cache directory that is keyed by the CRC and size of the jar
+ * so that it is reused by later launches. A cached file is only reused when its CRC
+ * matches the entry. The least recently used files are deleted once the cache grows
+ * beyond its maximum size. When the cache is disabled or cannot be used, nested jars are
+ * inflated into off-heap buffers instead.
+ * <p>
+ * The cache is stored in {@code .osrc/nested-jars} of the user's home directory unless
+ * the {@code loader.nested.cache} property is set. The directory is created so that only
+ * its owner can access it and is not used if it is owned by another user or can be
+ * written by other users. The maximum size, in megabytes, can be set with
+ * {@code loader.nested.cache.max-size}, a value of {@code 0} disables the cache.
+ *
+ * @author osrc
+ */
+final class NestedJarCache {
+
+	static final String DIRECTORY_PROPERTY = "loader.nested.cache";
+
+	static final String MAX_SIZE_PROPERTY = "loader.nested.cache.max-size";
+
+	private static final long DEFAULT_MAX_SIZE = 1024;
+
+	private static final String EXTENSION = ".jar";
+
+	private static final int BUFFER_SIZE = 32 * 1024;
+
+	private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+
+	private static final Map<String, RandomAccessData> inflated = new ConcurrentHashMap<>();
+
+	private NestedJarCache() {
+	}
+
+	/**
+	 * Return the inflated content of the given compressed nested jar entry.
+	 * @param jarFile the jar file that contains the entry
+	 * @param entry the compressed entry
+	 * @return the inflated data
+	 * @throws IOException if the entry cannot be inflated
+	 */
+	static RandomAccessData get(JarFile jarFile, JarEntry entry) throws IOException {
+		String key = String.format("%08x-%d", entry.getCrc(), entry.getSize());
+		RandomAccessData data = inflated.get(key);
+		if (data != null) {
+			return data;
+		}
+		// Inflate outside of the map so that other keys are never blocked
+		data = inflate(jarFile, entry, key);
+		RandomAccessData existing = inflated.putIfAbsent(key, data);
+		if (existing != null) {
+			if (data instanceof RandomAccessDataFile) {
+				((RandomAccessDataFile) data).close();
+			}
+			return existing;
+		}
+		return data;
+	}
+
+	private static RandomAccessData inflate(JarFile jarFile, JarEntry entry, String key) throws IOException {
+		long maxSize = getMaxSize();
+		File directory = getDirectory();
+		if (maxSize > 0) {
+			try {
+				createDirectory(directory.toPath());
+				File file = getCached(jarFile, entry, directory, key);
+				evict(directory, maxSize, key);
+				return Boolean.parseBoolean(SystemPropertyUtils.getProperty(JarFile.MAPPED_DATA_PROPERTY))
+						? new MappedRandomAccessData(file) : new RandomAccessDataFile(file);
+			}
+			catch (IOException | RuntimeException ex) {
+				// Cache cannot be used, inflate into memory instead
+			}
+		}
+		return inflateToBuffer(jarFile, entry);
+	}
+
+	private static File getCached(JarFile jarFile, JarEntry entry, File directory, String key) throws IOException {
+		File file = new File(directory, key + EXTENSION);
+		if (isValid(file.toPath(), entry)) {
+			file.setLastModified(System.currentTimeMillis());
+			return file;
+		}
+		File tempFile = File.createTempFile(key, ".tmp", directory);
+		try {
+			CRC32 crc = new CRC32();
+			try (InputStream inputStream = jarFile.getInputStream(entry);
+					OutputStream outputStream = Files.newOutputStream(tempFile.toPath())) {
+				byte[] buffer = new byte[BUFFER_SIZE];
+				int bytesRead;
+				while ((bytesRead = inputStream.read(buffer)) != -1) {
+					crc.update(buffer, 0, bytesRead);
+					outputStream.write(buffer, 0, bytesRead);
+				}
+			}
+			if (crc.getValue() != entry.getCrc() || tempFile.length() != entry.getSize()) {
+				throw new IOException("Inflated content of nested jar '" + entry.getName() + "' is corrupt");
+			}
+			try {
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+						StandardCopyOption.ATOMIC_MOVE);
+			}
+			catch (AtomicMoveNotSupportedException ex) {
+				Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+			}
+			return file;
+		}
+		finally {
+			Files.deleteIfExists(tempFile.toPath());
+		}
+	}
+
+	private static boolean isValid(Path file, JarEntry entry) throws IOException {
+		if (!Files.isRegularFile(file, LinkOption.NOFOLLOW_LINKS) || Files.size(file) != entry.getSize()) {
+			return false;
+		}
+		CRC32 crc = new CRC32();
+		try (InputStream inputStream = Files.newInputStream(file)) {
+			byte[] buffer = new byte[BUFFER_SIZE];
+			int bytesRead;
+			while ((bytesRead = inputStream.read(buffer)) != -1) {
+				crc.update(buffer, 0, bytesRead);
+			}
+		}
+		return crc.getValue() == entry.getCrc();
+	}
+
+	private static void createDirectory(Path directory) throws IOException {
+		if (!Files.exists(directory, LinkOption.NOFOLLOW_LINKS)) {
+			Files.createDirectories(directory.getParent());
+			try {
+				Files.createDirectory(directory, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+			}
+			catch (UnsupportedOperationException ex) {
+				Files.createDirectory(directory);
+			}
+			catch (FileAlreadyExistsException ex) {
+				// Created concurrently, checked below
+			}
+		}
+		PosixFileAttributeView view = Files.getFileAttributeView(directory, PosixFileAttributeView.class,
+				LinkOption.NOFOLLOW_LINKS);
+		if (view == null) {
+			return;
+		}
+		PosixFileAttributes attributes = view.readAttributes();
+		UserPrincipal user = directory.getFileSystem().getUserPrincipalLookupService()
+				.lookupPrincipalByName(System.getProperty("user.name"));
+		Set<PosixFilePermission> permissions = EnumSet.copyOf(attributes.permissions());
+		permissions.retainAll(EnumSet.of(PosixFilePermission.GROUP_WRITE, PosixFilePermission.OTHERS_WRITE));
+		if (!attributes.isDirectory() || !attributes.owner().equals(user) || !permissions.isEmpty()) {
+			throw new IOException("Nested jar cache '" + directory + "' must be a directory that only its owner "
+					+ "can write to");
+		}
+	}
+
+	private static void evict(File directory, long maxSize, String key) {
+		File[] files = directory.listFiles((candidate) -> candidate.getName().endsWith(EXTENSION));
+		if (files == null) {
+			return;
+		}
+		long size = 0;
+		for (File file : files) {
+			size += file.length();
+		}
+		Arrays.sort(files, Comparator.comparingLong(File::lastModified));
+		for (File file : files) {
+			if (size <= maxSize) {
+				break;
+			}
+			String name = file.getName();
+			String fileKey = name.substring(0, name.length() - EXTENSION.length());
+			// Files used by this process are never evicted
+			if (!fileKey.equals(key) && !inflated.containsKey(fileKey)) {
+				long length = file.length();
+				if (file.delete()) {
+					size -= length;
+				}
+			}
+		}
+	}
+
+	private static RandomAccessData inflateToBuffer(JarFile jarFile, JarEntry entry) throws IOException {
+		if (entry.getSize() > Integer.MAX_VALUE) {
+			throw new IOException("Nested jar '" + entry.getName() + "' is too large to be inflated in memory");
+		}
+		ByteBuffer buffer = ByteBuffer.allocateDirect((int) entry.getSize());
+		CRC32 crc = new CRC32();
+		try (InputStream inputStream = jarFile.getInputStream(entry)) {
+			byte[] bytes = new byte[BUFFER_SIZE];
+			int bytesRead;
+			while ((bytesRead = inputStream.read(bytes)) != -1) {
+				crc.update(bytes, 0, bytesRead);
+				buffer.put(bytes, 0, bytesRead);
+			}
+		}
+		catch (BufferOverflowException ex) {
+			throw new IOException("Inflated content of nested jar '" + entry.getName() + "' is corrupt", ex);
+		}
+		if (crc.getValue() != entry.getCrc() || buffer.hasRemaining()) {
+			throw new IOException("Inflated content of nested jar '" + entry.getName() + "' is corrupt");
+		}
+		return new MappedRandomAccessData(jarFile.getRootJarFile().getFile(), buffer);
+	}
+
+	private static File getDirectory() {
+		String directory = SystemPropertyUtils.getProperty(DIRECTORY_PROPERTY);
+		return (directory != null) ? new File(directory)
+				: new File(System.getProperty("user.home"), ".osrc" + File.separator + "nested-jars");
+	}
+
+	private static long getMaxSize() {
+		String maxSize = SystemPropertyUtils.getProperty(MAX_SIZE_PROPERTY);
+		try {
+			return ((maxSize != null) ? Long.parseLong(maxSize.trim()) : DEFAULT_MAX_SIZE) * 1024 * 1024;
+		}
+		catch (NumberFormatException ex) {
+			return DEFAULT_MAX_SIZE * 1024 * 1024;
+		}
+	}
+
+}
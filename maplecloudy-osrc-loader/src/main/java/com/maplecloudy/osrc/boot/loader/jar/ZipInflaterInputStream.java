@@ -19,23 +19,35 @@ package com.maplecloudy.osrc.boot.loader.jar;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 /**
  * {@link InflaterInputStream} that supports the writing of an extra "dummy" byte (which
- * is required with JDK 6) and returns accurate available() results.
+ * is required with JDK 6) and returns accurate available() results. The inflater and
+ * buffer are taken from the {@link InflaterPool} and returned to it on close.
  *
  * @author Phillip Webb
  */
 class ZipInflaterInputStream extends InflaterInputStream {
 
+	private final InflaterPool.PooledInflater pooledInflater;
+
 	private int available;
 
 	private boolean extraBytesWritten;
 
+	private boolean released;
+
 	ZipInflaterInputStream(InputStream inputStream, int size) {
-		super(inputStream, new Inflater(true), getInflaterBufferSize(size));
+		this(inputStream, size, InflaterPool.acquire(getInflaterBufferSize(size)));
+	}
+
+	private ZipInflaterInputStream(InputStream inputStream, int size,
+			InflaterPool.PooledInflater pooledInflater) {
+		// Use a minimal buffer then replace it with the pooled one
+		super(inputStream, pooledInflater.getInflater(), 1);
+		this.buf = pooledInflater.getBuffer();
+		this.pooledInflater = pooledInflater;
 		this.available = size;
 	}
 
@@ -58,8 +70,15 @@ class ZipInflaterInputStream extends InflaterInputStream {
 
 	@Override
 	public void close() throws IOException {
-		super.close();
-		this.inf.end();
+		try {
+			super.close();
+		}
+		finally {
+			if (!this.released) {
+				this.released = true;
+				InflaterPool.release(this.pooledInflater);
+			}
+		}
 	}
 
 	@Override
@@ -4,16 +4,20 @@ import org.apache.commons.httpclient.*;
 import org.apache.commons.httpclient.methods.GetMethod;
 import org.apache.commons.httpclient.methods.PostMethod;
 import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.commons.httpclient.params.HttpClientParams;
 import org.apache.commons.httpclient.params.HttpConnectionManagerParams;
 import org.apache.commons.httpclient.params.HttpMethodParams;
 import org.apache.commons.httpclient.util.URIUtil;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.http.HttpEntity;
+import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.CloseableHttpResponse;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.entity.StringEntity;
 import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultHttpRequestRetryHandler;
 import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.util.ObjectUtils;
@@ -28,11 +32,106 @@ import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class HttpUtils {
 
   private static final Logger logger = LoggerFactory.getLogger(HttpUtils.class);
 
+  /**
+   * 连接超时时间(单位毫秒)
+   */
+  private static final int CONNECTION_TIMEOUT = 30 * 1000;
+
+  /**
+   * 读取数据的超时时间(单位毫秒)
+   */
+  private static final int SO_TIMEOUT = 5 * 60 * 1000;
+
+  private static final int MAX_CONNECTIONS_PER_HOST = 16;
+
+  private static final int MAX_TOTAL_CONNECTIONS = 64;
+
+  private static final int RETRY_COUNT = 3;
+
+  /**
+   * 所有请求共享的连接池,保持长连接以避免每次请求重新建立TCP/TLS连接
+   */
+  private static final MultiThreadedHttpConnectionManager CONNECTION_MANAGER = createConnectionManager();
+
+  private static final CloseableHttpClient CLOSEABLE_CLIENT = createCloseableClient();
+
+  private static final AtomicInteger ASYNC_THREADS = new AtomicInteger();
+
+  private static final ExecutorService ASYNC_EXECUTOR = Executors.newCachedThreadPool(
+      (runnable) -> {
+        Thread thread = new Thread(runnable,
+            "osrc-http-" + ASYNC_THREADS.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+      });
+
+  /**
+   * 创建一个使用共享连接池的HttpClient。返回的实例可以单独设置参数,
+   * 但连接在所有实例之间复用。
+   *
+   * @return HttpClient
+   */
+  public static HttpClient createClient() {
+    HttpClientParams params = new HttpClientParams();
+    params.setParameter(HttpMethodParams.RETRY_HANDLER,
+        new DefaultHttpMethodRetryHandler(RETRY_COUNT, false));
+    return new HttpClient(params, CONNECTION_MANAGER);
+  }
+
+  /**
+   * 异步执行相互独立的请求,例如部署前的各项检查
+   *
+   * @param request 请求
+   * @return 请求结果
+   */
+  public static <T> CompletableFuture<T> async(Callable<T> request) {
+    return CompletableFuture.supplyAsync(() -> {
+      try {
+        return request.call();
+      } catch (RuntimeException e) {
+        throw e;
+      } catch (Exception e) {
+        throw new CompletionException(e);
+      }
+    }, ASYNC_EXECUTOR);
+  }
+
+  private static MultiThreadedHttpConnectionManager createConnectionManager() {
+    MultiThreadedHttpConnectionManager connectionManager = new MultiThreadedHttpConnectionManager();
+    HttpConnectionManagerParams params = connectionManager.getParams();
+    params.setConnectionTimeout(CONNECTION_TIMEOUT);
+    params.setSoTimeout(SO_TIMEOUT);
+    params.setStaleCheckingEnabled(true);
+    params.setDefaultMaxConnectionsPerHost(MAX_CONNECTIONS_PER_HOST);
+    params.setMaxTotalConnections(MAX_TOTAL_CONNECTIONS);
+    return connectionManager;
+  }
+
+  private static CloseableHttpClient createCloseableClient() {
+    PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+    connectionManager.setDefaultMaxPerRoute(MAX_CONNECTIONS_PER_HOST);
+    connectionManager.setMaxTotal(MAX_TOTAL_CONNECTIONS);
+    RequestConfig requestConfig = RequestConfig.custom()
+        .setConnectTimeout(CONNECTION_TIMEOUT).setSocketTimeout(SO_TIMEOUT)
+        .build();
+    return HttpClients.custom().useSystemProperties()
+        .setConnectionManager(connectionManager)
+        .setDefaultRequestConfig(requestConfig)
+        .setRetryHandler(new DefaultHttpRequestRetryHandler(RETRY_COUNT, false))
+        .build();
+  }
+
   /**
    * 执行一个HTTP GET请求，返回请求响应的HTML
    *
@@ -40,7 +139,7 @@ public class HttpUtils {
    * @return 返回请求响应的HTML
    */
   public static int doGet(String url) {
-    HttpClient client = new HttpClient();
+    HttpClient client = createClient();
     HttpMethod method = new GetMethod(url);
 
     try {
@@ -70,7 +169,7 @@ public class HttpUtils {
 
   public static String doGet(String url, Map<String,Object> params,Header headers) {
     // 构造HttpClient的实例
-    HttpClient client = new HttpClient();
+    HttpClient client = createClient();
     //设置参数
     if (null != params && !params.isEmpty()) {
       StringBuilder stringBuilder = new StringBuilder(url);
@@ -86,9 +185,6 @@ public class HttpUtils {
     if (!ObjectUtils.isEmpty(headers)) {
       method.addRequestHeader(headers);
     }
-    // 使用系统提供的默认的恢复策略
-    method.getParams().setParameter(HttpMethodParams.RETRY_HANDLER,
-        new DefaultHttpMethodRetryHandler());
     try {
       // 执行getMethod
       client.executeMethod(method);
@@ -119,7 +215,7 @@ public class HttpUtils {
       boolean pretty) {
     logger.info("http的请求参数为：" + queryString);
     StringBuffer response = new StringBuffer();
-    HttpClient client = new HttpClient();
+    HttpClient client = createClient();
     HttpMethod method = new GetMethod(url);
 
     try {
@@ -127,15 +223,6 @@ public class HttpUtils {
         method.setQueryString(URIUtil.encodeQuery(queryString));
       }
 
-      HttpConnectionManagerParams managerParams = client.getHttpConnectionManager()
-          .getParams();
-
-      // 设置连接的超时时间
-      managerParams.setConnectionTimeout(3 * 60 * 1000);
-
-      // 设置读取数据的超时时间
-      managerParams.setSoTimeout(5 * 60 * 1000);
-
       client.executeMethod(method);
       logger.info("http的请求地址为:" + url + ",返回的状态码为" + method.getStatusCode());
 
@@ -174,7 +261,7 @@ public class HttpUtils {
   }
   public static String doPost(String url, Map<String,Object> map,Header header) {
     // 构造HttpClient的实例
-    HttpClient httpClient = new HttpClient();
+    HttpClient httpClient = createClient();
     // 创建POST方法的实例
     PostMethod method = new PostMethod(url);
     if (!ObjectUtils.isEmpty(header)) {
@@ -228,15 +315,11 @@ public class HttpUtils {
    */
   public static String doPost(String url, String reqStr, String contentType,
       String charset) {
-    HttpClient client = new HttpClient();
+    HttpClient client = createClient();
     PostMethod method = new PostMethod(url);
     try {
-      HttpConnectionManagerParams managerParams = client.getHttpConnectionManager()
-          .getParams();
-      // 设置连接超时时间(单位毫秒)
-      managerParams.setConnectionTimeout(30000);
       // 设置读数据超时时间(单位毫秒)
-      managerParams.setSoTimeout(30000);
+      method.getParams().setSoTimeout(30000);
 
       method.setRequestEntity(
           new StringRequestEntity(reqStr, contentType, charset));
@@ -279,16 +362,13 @@ public class HttpUtils {
    */
   public static String doPost(String url, HttpEntity entity) {
 
-    //创建httpclient对象
-    CloseableHttpClient client = HttpClients.createSystem();
     //创建post方式请求对象
     HttpPost httpPost = new HttpPost(url);
     //设置参数到请求对象中
     httpPost.setEntity(entity);
 
     BufferedReader reader = null;
-    try {
-      CloseableHttpResponse response = client.execute(httpPost);
+    try (CloseableHttpResponse response = CLOSEABLE_CLIENT.execute(httpPost)) {
       logger.info("Status:" + response.getStatusLine().getStatusCode());
 
       if (response.getStatusLine().getStatusCode() == HttpStatus.SC_OK) {
@@ -304,12 +384,6 @@ public class HttpUtils {
       }
     } catch (IOException ex) {
       logger.info("执行http post请求出错,exception={}", ex.getMessage());
-    } finally {
-      try {
-        client.close();
-      } catch (IOException e) {
-        e.printStackTrace();
-      }
     }
     return null;
   }
@@ -17,6 +17,7 @@
 package com.maplecloudy.osrc.boot.buildpack.platform.build;
 
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 import com.maplecloudy.osrc.boot.buildpack.platform.docker.LogUpdateEvent;
@@ -46,6 +47,13 @@ public abstract class AbstractBuildLog implements BuildLog {
 		return getProgressConsumer(String.format(" > Pulling %s '%s'", imageType.getDescription(), imageReference));
 	}
 
+	@Override
+	public Consumer<TotalProgressEvent> pullingImages(Map<ImageReference, ImageType> images) {
+		images.forEach((imageReference, imageType) -> log(
+				String.format(" > Pulling %s '%s'", imageType.getDescription(), imageReference)));
+		return getProgressConsumer(String.format(" > Pulling %d images", images.size()));
+	}
+
 	@Override
 	public void pulledImage(Image image, ImageType imageType) {
 		log(String.format(" > Pulled %s '%s'", imageType.getDescription(), getDigest(image)));
@@ -17,6 +17,7 @@
 package com.maplecloudy.osrc.boot.buildpack.platform.build;
 
 import java.io.PrintStream;
+import java.util.Map;
 import java.util.function.Consumer;
 
 import com.maplecloudy.osrc.boot.buildpack.platform.docker.LogUpdateEvent;
@@ -50,6 +51,13 @@ public interface BuildLog {
 	 */
 	Consumer<TotalProgressEvent> pullingImage(ImageReference imageReference, ImageType imageType);
 
+	/**
+	 * Log that several images are being pulled concurrently.
+	 * @param images the references and types of the images
+	 * @return a consumer for the total progress update events of all images
+	 */
+	Consumer<TotalProgressEvent> pullingImages(Map<ImageReference, ImageType> images);
+
 	/**
 	 * Log that an image has been pulled.
 	 * @param image the image that was pulled
@@ -17,7 +17,10 @@
 package com.maplecloudy.osrc.boot.buildpack.platform.build;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.function.Consumer;
 
 import com.maplecloudy.osrc.boot.buildpack.platform.docker.transport.DockerEngineException;
@@ -52,6 +55,8 @@ public class Builder {
 
 	private final DockerConfiguration dockerConfiguration;
 
+	private final LayerCache layerCache;
+
 	/**
 	 * Create a new builder instance.
 	 */
@@ -91,6 +96,7 @@ public class Builder {
 		this.log = log;
 		this.docker = docker;
 		this.dockerConfiguration = dockerConfiguration;
+		this.layerCache = LayerCache.get();
 	}
 
 	public void build(BuildRequest request) throws DockerEngineException, IOException {
@@ -99,16 +105,36 @@ public class Builder {
 		String domain = request.getBuilder().getDomain();
 		PullPolicy pullPolicy = request.getPullPolicy();
 		ImageFetcher imageFetcher = new ImageFetcher(domain, getBuilderAuthHeader(), pullPolicy);
+		Map<ImageReference, ImageType> images = new LinkedHashMap<>();
+		images.put(request.getBuilder(), ImageType.BUILDER);
+		if (request.getRunImage() != null) {
+			images.put(request.getRunImage(), ImageType.RUNNER);
+		}
+		imageFetcher.fetchImages(images);
 		Image builderImage = imageFetcher.fetchImage(ImageType.BUILDER, request.getBuilder());
 		BuilderMetadata builderMetadata = BuilderMetadata.fromImage(builderImage);
 		request = withRunImageIfNeeded(request, builderMetadata.getStack());
+		BuildpackResolverContext resolverContext = new BuilderResolverContext(imageFetcher, builderMetadata);
+		// The run image and buildpack images only depend on the builder so they are
+		// fetched together
+		images.clear();
+		images.put(request.getRunImage(), ImageType.RUNNER);
+		BuildpackResolvers.getImageReferences(resolverContext, request.getBuildpacks())
+				.forEach((reference) -> images.putIfAbsent(reference, ImageType.BUILDPACK));
+		imageFetcher.fetchImages(images);
 		Image runImage = imageFetcher.fetchImage(ImageType.RUNNER, request.getRunImage());
 		assertStackIdsMatch(runImage, builderImage);
 		BuildOwner buildOwner = BuildOwner.fromEnv(builderImage.getConfig().getEnv());
-		Buildpacks buildpacks = getBuildpacks(request, imageFetcher, builderMetadata);
-		EphemeralBuilder ephemeralBuilder = new EphemeralBuilder(buildOwner, builderImage, request.getName(),
-				builderMetadata, request.getCreator(), request.getEnv(), buildpacks);
-		this.docker.image().load(ephemeralBuilder.getArchive(), UpdateListener.none());
+		Buildpacks buildpacks = BuildpackResolvers.resolveAll(resolverContext, request.getBuildpacks());
+		EphemeralBuilder ephemeralBuilder;
+		try {
+			ephemeralBuilder = new EphemeralBuilder(buildOwner, builderImage, request.getName(), builderMetadata,
+					request.getCreator(), request.getEnv(), buildpacks, this.layerCache);
+			this.docker.image().load(ephemeralBuilder.getArchive(), UpdateListener.none());
+		}
+		finally {
+			buildpacks.cleanUp();
+		}
 		try {
 			executeLifecycle(request, ephemeralBuilder);
 			if (request.isPublish()) {
@@ -140,11 +166,6 @@ public class Builder {
 				+ "' does not match builder stack '" + builderImageStackId + "'");
 	}
 
-	private Buildpacks getBuildpacks(BuildRequest request, ImageFetcher imageFetcher, BuilderMetadata builderMetadata) {
-		BuildpackResolverContext resolverContext = new BuilderResolverContext(imageFetcher, builderMetadata);
-		return BuildpackResolvers.resolveAll(resolverContext, request.getBuildpacks());
-	}
-
 	private void executeLifecycle(BuildRequest request, EphemeralBuilder builder) throws IOException {
 		try (Lifecycle lifecycle = new Lifecycle(this.log, this.docker, request, builder)) {
 			lifecycle.execute();
@@ -169,7 +190,9 @@ public class Builder {
 	}
 
 	/**
-	 * Internal utility class used to fetch images.
+	 * Internal utility class used to fetch images. Images that need to be pulled are
+	 * pulled concurrently when several images are fetched at once, and fetched images are
+	 * kept so that each image is only fetched once per build.
 	 */
 	private class ImageFetcher {
 
@@ -179,6 +202,8 @@ public class Builder {
 
 		private final PullPolicy pullPolicy;
 
+		private final Map<ImageReference, Image> images = new LinkedHashMap<>();
+
 		ImageFetcher(String domain, String authHeader, PullPolicy pullPolicy) {
 			this.domain = domain;
 			this.authHeader = authHeader;
@@ -188,18 +213,50 @@ public class Builder {
 		Image fetchImage(ImageType type, ImageReference reference) throws IOException {
 			Assert.notNull(type, "Type must not be null");
 			Assert.notNull(reference, "Reference must not be null");
-			Assert.state(this.authHeader == null || reference.getDomain().equals(this.domain),
-					() -> String.format("%s '%s' must be pulled from the '%s' authenticated registry",
-							StringUtils.capitalize(type.getDescription()), reference, this.domain));
-			if (this.pullPolicy == PullPolicy.ALWAYS) {
-				return pullImage(reference, type);
+			Image image = this.images.get(reference);
+			if (image == null) {
+				Map<ImageReference, ImageType> images = new LinkedHashMap<>();
+				images.put(reference, type);
+				fetchImages(images);
+				image = this.images.get(reference);
+			}
+			return image;
+		}
+
+		void fetchImages(Map<ImageReference, ImageType> images) throws IOException {
+			Map<ImageReference, ImageType> pulls = new LinkedHashMap<>();
+			for (Map.Entry<ImageReference, ImageType> entry : images.entrySet()) {
+				ImageReference reference = entry.getKey();
+				ImageType type = entry.getValue();
+				Assert.state(this.authHeader == null || reference.getDomain().equals(this.domain),
+						() -> String.format("%s '%s' must be pulled from the '%s' authenticated registry",
+								StringUtils.capitalize(type.getDescription()), reference, this.domain));
+				if (!this.images.containsKey(reference)) {
+					Image image = (this.pullPolicy != PullPolicy.ALWAYS) ? inspectImage(reference) : null;
+					if (image != null) {
+						this.images.put(reference, image);
+					}
+					else {
+						pulls.put(reference, type);
+					}
+				}
+			}
+			if (pulls.size() == 1) {
+				Map.Entry<ImageReference, ImageType> pull = pulls.entrySet().iterator().next();
+				this.images.put(pull.getKey(), pullImage(pull.getKey(), pull.getValue()));
 			}
+			else if (!pulls.isEmpty()) {
+				pullImages(pulls);
+			}
+		}
+
+		private Image inspectImage(ImageReference reference) throws IOException {
 			try {
 				return Builder.this.docker.image().inspect(reference);
 			}
 			catch (DockerEngineException ex) {
 				if (this.pullPolicy == PullPolicy.IF_NOT_PRESENT && ex.getStatusCode() == 404) {
-					return pullImage(reference, type);
+					return null;
 				}
 				throw ex;
 			}
@@ -213,6 +270,17 @@ public class Builder {
 			return image;
 		}
 
+		private void pullImages(Map<ImageReference, ImageType> pulls) throws IOException {
+			TotalProgressPullListener listener = new TotalProgressPullListener(
+					Builder.this.log.pullingImages(pulls));
+			List<ImageReference> references = new ArrayList<>(pulls.keySet());
+			List<Image> images = Builder.this.docker.image().pull(references, listener, this.authHeader);
+			for (int i = 0; i < references.size(); i++) {
+				this.images.put(references.get(i), images.get(i));
+				Builder.this.log.pulledImage(images.get(i), pulls.get(references.get(i)));
+			}
+		}
+
 	}
 
 	/**
@@ -245,6 +313,11 @@ public class Builder {
 			Builder.this.docker.image().exportLayers(reference, exports);
 		}
 
+		@Override
+		public LayerCache getLayerCache() {
+			return Builder.this.layerCache;
+		}
+
 	}
 
 }
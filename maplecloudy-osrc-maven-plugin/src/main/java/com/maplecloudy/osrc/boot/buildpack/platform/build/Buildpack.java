@@ -42,4 +42,11 @@ interface Buildpack {
 	 */
 	void apply(IOConsumer<Layer> layers) throws IOException;
 
+	/**
+	 * Release any resources, such as temporary files, held for the layers once they are
+	 * no longer needed.
+	 */
+	default void cleanUp() {
+	}
+
 }
@@ -52,4 +52,10 @@ interface BuildpackResolverContext {
 	 */
 	void exportImageLayers(ImageReference reference, IOBiConsumer<String,TarArchive> exports) throws IOException;
 
+	/**
+	 * Return the cache used for generated layers.
+	 * @return the layer cache or {@code null} if layers are not cached
+	 */
+	LayerCache getLayerCache();
+
 }
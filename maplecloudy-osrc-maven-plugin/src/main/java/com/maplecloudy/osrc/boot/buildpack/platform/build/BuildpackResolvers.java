@@ -16,11 +16,14 @@
 
 package com.maplecloudy.osrc.boot.buildpack.platform.build;
 
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import com.maplecloudy.osrc.boot.buildpack.platform.docker.type.ImageReference;
 import org.springframework.util.Assert;
 import org.springframework.util.CollectionUtils;
 
@@ -60,12 +63,50 @@ final class BuildpackResolvers {
 			return Buildpacks.EMPTY;
 		}
 		List<Buildpack> buildpacks = new ArrayList<>(references.size());
-		for (BuildpackReference reference : references) {
-			buildpacks.add(resolve(context, reference));
+		try {
+			for (BuildpackReference reference : references) {
+				buildpacks.add(resolve(context, reference));
+			}
+		}
+		catch (RuntimeException ex) {
+			Buildpacks.of(buildpacks).cleanUp();
+			throw ex;
 		}
 		return Buildpacks.of(buildpacks);
 	}
 
+	/**
+	 * Return the image references of the image buildpacks among the given
+	 * {@link BuildpackReference BuildpackReferences}, so that their images can be fetched
+	 * before the references are resolved. Invalid references are ignored here and
+	 * reported when they are resolved.
+	 * @param context the resolver context
+	 * @param references the references to check
+	 * @return the image references
+	 */
+	static List<ImageReference> getImageReferences(BuildpackResolverContext context,
+			Collection<BuildpackReference> references) {
+		List<ImageReference> imageReferences = new ArrayList<>();
+		if (CollectionUtils.isEmpty(references)) {
+			return imageReferences;
+		}
+		for (BuildpackReference reference : references) {
+			try {
+				Path path = reference.asPath();
+				if ((path == null || !Files.exists(path)) && BuilderBuildpack.resolve(context, reference) == null) {
+					ImageReference imageReference = ImageBuildpack.getImageReference(reference);
+					if (imageReference != null) {
+						imageReferences.add(imageReference);
+					}
+				}
+			}
+			catch (IllegalArgumentException ex) {
+				// Reported when resolved
+			}
+		}
+		return imageReferences;
+	}
+
 	private static Buildpack resolve(BuildpackResolverContext context, BuildpackReference reference) {
 		Assert.notNull(reference, "Reference must not be null");
 		for (BuildpackResolver resolver : resolvers) {
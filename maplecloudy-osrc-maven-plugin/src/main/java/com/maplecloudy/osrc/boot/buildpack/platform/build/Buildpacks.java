@@ -57,6 +57,12 @@ final class Buildpacks {
 		}
 	}
 
+	void cleanUp() {
+		for (Buildpack buildpack : this.buildpacks) {
+			buildpack.cleanUp();
+		}
+	}
+
 	void addOrderLayerContent(Layout layout) throws IOException {
 		layout.file("/cnb/order.toml", Owner.ROOT, Content.of(getOrderToml()));
 	}
@@ -24,6 +24,9 @@ import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.SimpleFileVisitor;
 import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import com.maplecloudy.osrc.boot.buildpack.platform.docker.type.Layer;
 import org.springframework.util.Assert;
@@ -33,6 +36,7 @@ import com.maplecloudy.osrc.boot.buildpack.platform.io.FilePermissions;
 import com.maplecloudy.osrc.boot.buildpack.platform.io.IOConsumer;
 import com.maplecloudy.osrc.boot.buildpack.platform.io.Layout;
 import com.maplecloudy.osrc.boot.buildpack.platform.io.Owner;
+import com.maplecloudy.osrc.boot.buildpack.platform.io.TarArchive;
 
 /**
  * A {@link Buildpack} that references a buildpack in a directory on the local file
@@ -50,9 +54,12 @@ final class DirectoryBuildpack implements Buildpack {
 
 	private final BuildpackCoordinates coordinates;
 
-	private DirectoryBuildpack(Path path) {
+	private final LayerCache layerCache;
+
+	private DirectoryBuildpack(Path path, LayerCache layerCache) {
 		this.path = path;
 		this.coordinates = findBuildpackCoordinates(path);
+		this.layerCache = layerCache;
 	}
 
 	private BuildpackCoordinates findBuildpackCoordinates(Path path) {
@@ -76,7 +83,28 @@ final class DirectoryBuildpack implements Buildpack {
 
 	@Override
 	public void apply(IOConsumer<Layer> layers) throws IOException {
-		layers.accept(Layer.of(this::addLayerContent));
+		TarArchive tarArchive = TarArchive.of(this::addLayerContent);
+		if (this.layerCache == null) {
+			layers.accept(Layer.fromTarArchive(tarArchive));
+			return;
+		}
+		layers.accept(this.layerCache.get(getFingerprint(), tarArchive));
+	}
+
+	private String getFingerprint() throws IOException {
+		StringBuilder fingerprint = new StringBuilder("directory\n").append(this.coordinates.getId()).append('@')
+				.append(this.coordinates.getVersion());
+		List<Path> paths;
+		try (Stream<Path> walk = Files.walk(this.path)) {
+			paths = walk.sorted().collect(Collectors.toList());
+		}
+		for (Path path : paths) {
+			BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+			fingerprint.append('\n').append(this.path.relativize(path)).append(' ')
+					.append(FilePermissions.umaskForPath(path)).append(' ').append(attributes.size()).append(' ')
+					.append(attributes.lastModifiedTime().toMillis());
+		}
+		return fingerprint.toString();
 	}
 
 	private void addLayerContent(Layout layout) throws IOException {
@@ -103,7 +131,7 @@ final class DirectoryBuildpack implements Buildpack {
 	static Buildpack resolve(BuildpackResolverContext context, BuildpackReference reference) {
 		Path path = reference.asPath();
 		if (path != null && Files.exists(path) && Files.isDirectory(path)) {
-			return new DirectoryBuildpack(path);
+			return new DirectoryBuildpack(path, context.getLayerCache());
 		}
 		return null;
 	}
@@ -18,6 +18,7 @@ package com.maplecloudy.osrc.boot.buildpack.platform.build;
 
 import java.io.IOException;
 import java.util.Map;
+import java.util.TreeMap;
 
 import com.maplecloudy.osrc.boot.buildpack.platform.docker.type.Image;
 import com.maplecloudy.osrc.boot.buildpack.platform.docker.type.ImageArchive;
@@ -25,6 +26,7 @@ import com.maplecloudy.osrc.boot.buildpack.platform.docker.type.ImageReference;
 import com.maplecloudy.osrc.boot.buildpack.platform.docker.type.Layer;
 import com.maplecloudy.osrc.boot.buildpack.platform.io.Content;
 import com.maplecloudy.osrc.boot.buildpack.platform.io.Owner;
+import com.maplecloudy.osrc.boot.buildpack.platform.io.TarArchive;
 
 /**
  * An short lived builder that is created for each {@link Lifecycle} run.
@@ -53,11 +55,12 @@ class EphemeralBuilder {
 	 * @param creator the builder creator
 	 * @param env the builder env
 	 * @param buildpacks an optional set of buildpacks to apply
+	 * @param layerCache an optional cache for generated layers
 	 * @throws IOException on IO error
 	 */
 	EphemeralBuilder(BuildOwner buildOwner, Image builderImage, ImageReference targetImage,
-			BuilderMetadata builderMetadata, Creator creator, Map<String, String> env, Buildpacks buildpacks)
-			throws IOException {
+			BuilderMetadata builderMetadata, Creator creator, Map<String, String> env, Buildpacks buildpacks,
+			LayerCache layerCache) throws IOException {
 		ImageReference name = ImageReference.random("pack.local/builder/").inTaggedForm();
 		this.buildOwner = buildOwner;
 		this.creator = creator;
@@ -67,7 +70,7 @@ class EphemeralBuilder {
 			update.withUpdatedConfig((config) -> config.withLabel(BUILDER_FOR_LABEL_NAME, targetImage.toString()));
 			update.withTag(name);
 			if (env != null && !env.isEmpty()) {
-				update.withNewLayer(getEnvLayer(env));
+				update.withNewLayer(getEnvLayer(env, layerCache));
 			}
 			if (buildpacks != null) {
 				buildpacks.apply(update::withNewLayer);
@@ -79,14 +82,19 @@ class EphemeralBuilder {
 		update.withCreatedBy(this.creator.getName(), this.creator.getVersion());
 	}
 
-	private Layer getEnvLayer(Map<String, String> env) throws IOException {
-		return Layer.of((layout) -> {
-			for (Map.Entry<String, String> entry : env.entrySet()) {
+	private Layer getEnvLayer(Map<String, String> env, LayerCache layerCache) throws IOException {
+		// Sorted so that the same env always generates the same layer, whatever its order
+		Map<String, String> sortedEnv = new TreeMap<>(env);
+		StringBuilder fingerprint = new StringBuilder("env");
+		sortedEnv.forEach((name, value) -> fingerprint.append('\n').append(name.length()).append(':').append(name)
+				.append('=').append(value));
+		return LayerCache.get(layerCache, fingerprint.toString(), TarArchive.of((layout) -> {
+			for (Map.Entry<String, String> entry : sortedEnv.entrySet()) {
 				String name = "/platform/env/" + entry.getKey();
 				Content content = Content.of((entry.getValue() != null) ? entry.getValue() : "");
 				layout.file(name, Owner.ROOT, content);
 			}
-		});
+		}));
 	}
 
 	/**
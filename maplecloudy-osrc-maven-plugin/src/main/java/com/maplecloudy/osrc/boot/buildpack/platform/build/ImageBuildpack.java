@@ -74,6 +74,11 @@ final class ImageBuildpack implements Buildpack {
 		this.exportedLayers.apply(layers);
 	}
 
+	@Override
+	public void cleanUp() {
+		this.exportedLayers.cleanUp();
+	}
+
 	/**
 	 * A {@link BuildpackResolver} compatible method to resolve image buildpacks.
 	 * @param context the resolver context
@@ -81,11 +86,20 @@ final class ImageBuildpack implements Buildpack {
 	 * @return the resolved {@link Buildpack} or {@code null}
 	 */
 	static Buildpack resolve(BuildpackResolverContext context, BuildpackReference reference) {
+		ImageReference imageReference = getImageReference(reference);
+		return (imageReference != null) ? new ImageBuildpack(context, imageReference) : null;
+	}
+
+	/**
+	 * Return the image reference of an image buildpack reference.
+	 * @param reference the buildpack reference
+	 * @return the image reference or {@code null} if the reference is not an image
+	 * reference
+	 */
+	static ImageReference getImageReference(BuildpackReference reference) {
 		boolean unambiguous = reference.hasPrefix(PREFIX);
 		try {
-			ImageReference imageReference = ImageReference
-					.of((unambiguous) ? reference.getSubReference(PREFIX) : reference.toString());
-			return new ImageBuildpack(context, imageReference);
+			return ImageReference.of((unambiguous) ? reference.getSubReference(PREFIX) : reference.toString());
 		}
 		catch (IllegalArgumentException ex) {
 			if (unambiguous) {
@@ -101,8 +115,15 @@ final class ImageBuildpack implements Buildpack {
 
 		ExportedLayers(BuildpackResolverContext context, ImageReference imageReference) throws IOException {
 			List<Path> layerFiles = new ArrayList<>();
-			context.exportImageLayers(imageReference, (name, archive) -> layerFiles.add(copyToTemp(name, archive)));
 			this.layerFiles = Collections.unmodifiableList(layerFiles);
+			try {
+				context.exportImageLayers(imageReference,
+						(name, archive) -> layerFiles.add(copyToTemp(name, archive)));
+			}
+			catch (IOException | RuntimeException ex) {
+				cleanUp();
+				throw ex;
+			}
 		}
 
 		private Path copyToTemp(String name, TarArchive archive) throws IOException {
@@ -111,9 +132,26 @@ final class ImageBuildpack implements Buildpack {
 			try (OutputStream out = Files.newOutputStream(path)) {
 				archive.writeTo(out);
 			}
+			catch (IOException ex) {
+				Files.deleteIfExists(path);
+				throw ex;
+			}
 			return path;
 		}
 
+		void cleanUp() {
+			// Layers are read once for their digest and again when they are written, so
+			// the files are only deleted once the builder image has been loaded
+			for (Path path : this.layerFiles) {
+				try {
+					Files.deleteIfExists(path);
+				}
+				catch (IOException ex) {
+					// Ignore, the file is in the temp directory
+				}
+			}
+		}
+
 		void apply(IOConsumer<Layer> layers) throws IOException {
 			for (Path path : this.layerFiles) {
 				layers.accept(Layer.fromTarArchive((out) -> copyLayerTar(path, out)));
@@ -133,7 +171,6 @@ final class ImageBuildpack implements Buildpack {
 				}
 				tarOut.finish();
 			}
-			Files.delete(path);
 		}
 
 	}
@@ -0,0 +1,245 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.buildpack.platform.build;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.maplecloudy.osrc.boot.buildpack.platform.docker.type.Layer;
+import com.maplecloudy.osrc.boot.buildpack.platform.docker.type.LayerId;
+import com.maplecloudy.osrc.boot.buildpack.platform.io.TarArchive;
+
+/**
+ * An on-disk cache of generated layer TAR files and their {@link LayerId IDs}. Entries
+ * are keyed by a fingerprint of the inputs that the layer is generated from so that
+ * repeated builds can reuse a layer without generating or hashing it again. The least
+ * recently used entries are evicted once the cache grows beyond its maximum size.
+ *
+ * Concurrent builds that share a cache may evict a TAR file that another build is about
+ * to write, in which case that layer is generated again from its inputs.
+ * <p>
+ * The cache is only used when the {@code osrc.buildpack.layer-cache} system property is
+ * set to the directory to store it in. The maximum size, in megabytes, can be set with
+ * {@code osrc.buildpack.layer-cache.max-size}, a value of {@code 0} disables the cache.
+ *
+ * @author osrc
+ */
+final class LayerCache {
+
+	static final String DIRECTORY_PROPERTY = "osrc.buildpack.layer-cache";
+
+	static final String MAX_SIZE_PROPERTY = "osrc.buildpack.layer-cache.max-size";
+
+	private static final long DEFAULT_MAX_SIZE = 2048;
+
+	private static final String VERSION = "1";
+
+	private static final String TAR_EXTENSION = ".tar";
+
+	private static final String ID_EXTENSION = ".id";
+
+	private final Path directory;
+
+	private final long maxSize;
+
+	private final Set<String> used = ConcurrentHashMap.newKeySet();
+
+	LayerCache(Path directory, long maxSize) {
+		this.directory = directory;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Return a layer for the given fingerprint, generating it from the given archive and
+	 * adding it to the cache if it is not already cached.
+	 * @param fingerprint a fingerprint of every input that the archive is generated from
+	 * @param tarArchive the archive to generate the layer from
+	 * @return the layer
+	 * @throws IOException on IO error
+	 */
+	Layer get(String fingerprint, TarArchive tarArchive) throws IOException {
+		String key = toHex(digest(VERSION + "\n" + fingerprint));
+		// Entries used by this build are never evicted while the build is running
+		this.used.add(key);
+		Path tarFile = this.directory.resolve(key + TAR_EXTENSION);
+		Layer layer = getCached(tarFile, this.directory.resolve(key + ID_EXTENSION), tarArchive);
+		if (layer == null) {
+			layer = add(key, tarArchive);
+			evict();
+		}
+		return layer;
+	}
+
+	private Layer getCached(Path tarFile, Path idFile, TarArchive tarArchive) {
+		try {
+			String id = new String(Files.readAllBytes(idFile), StandardCharsets.UTF_8).trim();
+			Layer layer = Layer.fromTarFile(tarFile, LayerId.of(id), tarArchive);
+			Files.setLastModifiedTime(tarFile, FileTime.fromMillis(System.currentTimeMillis()));
+			return layer;
+		}
+		catch (IOException | RuntimeException ex) {
+			// Missing or damaged entry, generate the layer again
+			return null;
+		}
+	}
+
+	private Layer add(String key, TarArchive tarArchive) throws IOException {
+		Files.createDirectories(this.directory);
+		Path tempFile = Files.createTempFile(this.directory, key, ".tmp");
+		try {
+			MessageDigest digest = getSha256Digest();
+			try (OutputStream outputStream = new DigestOutputStream(Files.newOutputStream(tempFile), digest)) {
+				tarArchive.writeTo(outputStream);
+			}
+			LayerId id = LayerId.ofSha256Digest(digest.digest());
+			// The ID is written first so that a visible TAR file always has an ID
+			Path tempIdFile = Files.createTempFile(this.directory, key, ".tmp");
+			Files.write(tempIdFile, id.toString().getBytes(StandardCharsets.UTF_8));
+			move(tempIdFile, this.directory.resolve(key + ID_EXTENSION));
+			Path tarFile = this.directory.resolve(key + TAR_EXTENSION);
+			move(tempFile, tarFile);
+			return Layer.fromTarFile(tarFile, id, tarArchive);
+		}
+		finally {
+			Files.deleteIfExists(tempFile);
+		}
+	}
+
+	private void move(Path source, Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		}
+		catch (AtomicMoveNotSupportedException ex) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	private void evict() throws IOException {
+		List<Path> tarFiles;
+		try (Stream<Path> list = Files.list(this.directory)) {
+			tarFiles = list.filter((path) -> path.getFileName().toString().endsWith(TAR_EXTENSION))
+					.collect(Collectors.toList());
+		}
+		List<Entry> entries = new ArrayList<>();
+		long size = 0;
+		for (Path tarFile : tarFiles) {
+			try {
+				Entry entry = new Entry(tarFile, Files.size(tarFile), Files.getLastModifiedTime(tarFile).toMillis());
+				entries.add(entry);
+				size += entry.size;
+			}
+			catch (NoSuchFileException ex) {
+				// Evicted by a concurrent build
+			}
+		}
+		entries.sort(Comparator.comparingLong((entry) -> entry.lastModified));
+		for (Entry entry : entries) {
+			if (size <= this.maxSize) {
+				break;
+			}
+			String fileName = entry.tarFile.getFileName().toString();
+			String key = fileName.substring(0, fileName.length() - TAR_EXTENSION.length());
+			if (!this.used.contains(key)) {
+				Files.deleteIfExists(entry.tarFile);
+				Files.deleteIfExists(this.directory.resolve(key + ID_EXTENSION));
+				size -= entry.size;
+			}
+		}
+	}
+
+	/**
+	 * Return the cache configured by the system properties.
+	 * @return the layer cache or {@code null} if the cache is not enabled
+	 */
+	static LayerCache get() {
+		String directory = System.getProperty(DIRECTORY_PROPERTY);
+		long maxSize = Long.getLong(MAX_SIZE_PROPERTY, DEFAULT_MAX_SIZE);
+		if (directory == null || directory.trim().isEmpty() || maxSize <= 0) {
+			return null;
+		}
+		return new LayerCache(Paths.get(directory.trim()), maxSize * 1024 * 1024);
+	}
+
+	/**
+	 * Return a layer for the given fingerprint from the given cache, or generate the
+	 * layer without caching it if there is no cache.
+	 * @param cache the cache or {@code null}
+	 * @param fingerprint a fingerprint of every input that the archive is generated from
+	 * @param tarArchive the archive to generate the layer from
+	 * @return the layer
+	 * @throws IOException on IO error
+	 */
+	static Layer get(LayerCache cache, String fingerprint, TarArchive tarArchive) throws IOException {
+		return (cache != null) ? cache.get(fingerprint, tarArchive) : Layer.fromTarArchive(tarArchive);
+	}
+
+	private static byte[] digest(String value) {
+		return getSha256Digest().digest(value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private static MessageDigest getSha256Digest() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
+	}
+
+	private static String toHex(byte[] digest) {
+		return String.format("%064x", new BigInteger(1, digest));
+	}
+
+	/**
+	 * A cache entry considered for eviction.
+	 */
+	private static final class Entry {
+
+		private final Path tarFile;
+
+		private final long size;
+
+		private final long lastModified;
+
+		Entry(Path tarFile, long size, long lastModified) {
+			this.tarFile = tarFile;
+			this.size = size;
+			this.lastModified = lastModified;
+		}
+
+	}
+
+}
@@ -24,6 +24,7 @@ import java.nio.file.Paths;
 
 import com.maplecloudy.osrc.boot.buildpack.platform.docker.type.Layer;
 import com.maplecloudy.osrc.boot.buildpack.platform.io.IOConsumer;
+import com.maplecloudy.osrc.boot.buildpack.platform.io.TarArchive;
 import org.apache.commons.compress.archivers.ArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
@@ -47,9 +48,12 @@ final class TarGzipBuildpack implements Buildpack {
 
 	private final BuildpackCoordinates coordinates;
 
-	private TarGzipBuildpack(Path path) {
+	private final LayerCache layerCache;
+
+	private TarGzipBuildpack(Path path, LayerCache layerCache) {
 		this.path = path;
 		this.coordinates = findBuildpackCoordinates(path);
+		this.layerCache = layerCache;
 	}
 
 	private BuildpackCoordinates findBuildpackCoordinates(Path path) {
@@ -79,7 +83,15 @@ final class TarGzipBuildpack implements Buildpack {
 
 	@Override
 	public void apply(IOConsumer<Layer> layers) throws IOException {
-		layers.accept(Layer.fromTarArchive(this::copyAndRebaseEntries));
+		TarArchive tarArchive = this::copyAndRebaseEntries;
+		if (this.layerCache == null) {
+			layers.accept(Layer.fromTarArchive(tarArchive));
+			return;
+		}
+		String fingerprint = "tgz\n" + this.coordinates.getId() + "@" + this.coordinates.getVersion() + "\n"
+				+ this.path.toAbsolutePath() + " " + Files.size(this.path) + " "
+				+ Files.getLastModifiedTime(this.path).toMillis();
+		layers.accept(this.layerCache.get(fingerprint, tarArchive));
 	}
 
 	private void copyAndRebaseEntries(OutputStream outputStream) throws IOException {
@@ -120,7 +132,7 @@ final class TarGzipBuildpack implements Buildpack {
 	static Buildpack resolve(BuildpackResolverContext context, BuildpackReference reference) {
 		Path path = reference.asPath();
 		if (path != null && Files.exists(path) && Files.isRegularFile(path)) {
-			return new TarGzipBuildpack(path);
+			return new TarGzipBuildpack(path, context.getLayerCache());
 		}
 		return null;
 	}
@@ -19,10 +19,17 @@ package com.maplecloudy.osrc.boot.buildpack.platform.docker;
 import java.io.IOException;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.maplecloudy.osrc.boot.buildpack.platform.docker.transport.HttpTransport;
 import com.maplecloudy.osrc.boot.buildpack.platform.io.IOBiConsumer;
@@ -59,6 +66,8 @@ public class DockerApi {
 
 	static final String API_VERSION = "v1.24";
 
+	static final int MAX_CONCURRENT_PULLS = 3;
+
 	private final HttpTransport http;
 
 	private final JsonStream jsonStream;
@@ -192,6 +201,66 @@ public class DockerApi {
 			}
 		}
 
+		/**
+		 * Pull several images from a registry concurrently, running at most
+		 * {@value DockerApi#MAX_CONCURRENT_PULLS} pulls at a time. The listener receives
+		 * the update events of every pull, it is started before the first pull starts and
+		 * finished once all pulls have completed.
+		 * @param references the image references to pull
+		 * @param listener a pull listener to receive update events
+		 * @param registryAuth registry authentication credentials
+		 * @return the {@link ImageApi pulled images} in the order of the references
+		 * @throws IOException on IO error
+		 */
+		public List<Image> pull(List<ImageReference> references, UpdateListener<PullImageUpdateEvent> listener,
+				String registryAuth) throws IOException {
+			Assert.notNull(references, "References must not be null");
+			Assert.noNullElements(references.toArray(), "References must not contain null elements");
+			Assert.notNull(listener, "Listener must not be null");
+			if (references.isEmpty()) {
+				return Collections.emptyList();
+			}
+			UpdateListener<PullImageUpdateEvent> pullListener = new ConcurrentUpdateListener<>(listener);
+			ExecutorService executor = Executors
+					.newFixedThreadPool(Math.min(references.size(), MAX_CONCURRENT_PULLS), new PullThreadFactory());
+			listener.onStart();
+			try {
+				List<Future<Image>> pulls = new ArrayList<>(references.size());
+				for (ImageReference reference : references) {
+					pulls.add(executor.submit(() -> pull(reference, pullListener, registryAuth)));
+				}
+				List<Image> images = new ArrayList<>(references.size());
+				for (Future<Image> pull : pulls) {
+					images.add(get(pull));
+				}
+				return images;
+			}
+			finally {
+				executor.shutdownNow();
+				listener.onFinish();
+			}
+		}
+
+		private Image get(Future<Image> pull) throws IOException {
+			try {
+				return pull.get();
+			}
+			catch (InterruptedException ex) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while pulling images", ex);
+			}
+			catch (ExecutionException ex) {
+				Throwable cause = ex.getCause();
+				if (cause instanceof IOException) {
+					throw (IOException) cause;
+				}
+				if (cause instanceof RuntimeException) {
+					throw (RuntimeException) cause;
+				}
+				throw new IllegalStateException(cause);
+			}
+		}
+
 		/**
 		 * Push an image to a registry.
 		 * @param reference the image reference to push
@@ -481,4 +550,44 @@ public class DockerApi {
 
 	}
 
+	/**
+	 * {@link UpdateListener} that passes the update events of concurrent operations on
+	 * to a single delegate, one event at a time. Starting and finishing the delegate is
+	 * left to the caller.
+	 *
+	 * @param <E> the event type
+	 */
+	private static class ConcurrentUpdateListener<E extends UpdateEvent> implements UpdateListener<E> {
+
+		private final UpdateListener<E> delegate;
+
+		ConcurrentUpdateListener(UpdateListener<E> delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void onUpdate(E event) {
+			synchronized (this.delegate) {
+				this.delegate.onUpdate(event);
+			}
+		}
+
+	}
+
+	/**
+	 * {@link ThreadFactory} for the daemon threads used to pull images.
+	 */
+	private static class PullThreadFactory implements ThreadFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		@Override
+		public Thread newThread(Runnable runnable) {
+			Thread thread = new Thread(runnable, "docker-pull-" + this.count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		}
+
+	}
+
 }
@@ -21,6 +21,7 @@ import java.net.InetAddress;
 import java.net.InetSocketAddress;
 import java.net.Socket;
 import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
 
 import com.maplecloudy.osrc.boot.buildpack.platform.socket.DomainSocket;
 import com.maplecloudy.osrc.boot.buildpack.platform.socket.NamedPipeSocket;
@@ -37,7 +38,7 @@ import org.apache.http.conn.socket.ConnectionSocketFactory;
 import org.apache.http.impl.client.CloseableHttpClient;
 import org.apache.http.impl.client.HttpClientBuilder;
 import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
 import org.apache.http.protocol.HttpContext;
 import org.apache.http.util.Args;
 
@@ -55,6 +56,8 @@ final class LocalHttpClientTransport extends HttpClientTransport {
 
 	private static final HttpHost LOCAL_DOCKER_HOST = HttpHost.create("docker://localhost");
 
+	private static final long MAX_IDLE_TIME = 30;
+
 	private LocalHttpClientTransport(CloseableHttpClient client) {
 		super(client, LOCAL_DOCKER_HOST);
 	}
@@ -63,6 +66,7 @@ final class LocalHttpClientTransport extends HttpClientTransport {
 		HttpClientBuilder builder = HttpClients.custom();
 		builder.setConnectionManager(new LocalConnectionManager(socketFilePath(environment)));
 		builder.setSchemePortResolver(new LocalSchemePortResolver());
+		builder.evictIdleConnections(MAX_IDLE_TIME, TimeUnit.SECONDS);
 		return new LocalHttpClientTransport(builder.build());
 	}
 
@@ -75,12 +79,22 @@ final class LocalHttpClientTransport extends HttpClientTransport {
 	}
 
 	/**
-	 * {@link HttpClientConnectionManager} for local Docker.
+	 * {@link HttpClientConnectionManager} for local Docker. Several connections are
+	 * pooled so that operations, such as image pulls, can run concurrently, and
+	 * connections are kept alive between the many small requests of a build. A
+	 * connection that has been idle is checked before it is reused.
 	 */
-	private static class LocalConnectionManager extends BasicHttpClientConnectionManager {
+	private static class LocalConnectionManager extends PoolingHttpClientConnectionManager {
+
+		private static final int MAX_CONNECTIONS = 8;
+
+		private static final int VALIDATE_AFTER_INACTIVITY = 2000;
 
 		LocalConnectionManager(String host) {
-			super(getRegistry(host), null, null, new LocalDnsResolver());
+			super(getRegistry(host), null, null, new LocalDnsResolver(), -1, TimeUnit.MILLISECONDS);
+			setMaxTotal(MAX_CONNECTIONS);
+			setDefaultMaxPerRoute(MAX_CONNECTIONS);
+			setValidateAfterInactivity(VALIDATE_AFTER_INACTIVITY);
 		}
 
 		private static Registry<ConnectionSocketFactory> getRegistry(String host) {
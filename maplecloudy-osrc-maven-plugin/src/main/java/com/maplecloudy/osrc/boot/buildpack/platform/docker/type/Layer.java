@@ -17,34 +17,65 @@
 package com.maplecloudy.osrc.boot.buildpack.platform.docker.type;
 
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 
 import com.maplecloudy.osrc.boot.buildpack.platform.io.Content;
-import com.maplecloudy.osrc.boot.buildpack.platform.io.InspectedContent;
 import com.maplecloudy.osrc.boot.buildpack.platform.io.Layout;
 import com.maplecloudy.osrc.boot.buildpack.platform.io.TarArchive;
 import org.springframework.util.Assert;
+import org.springframework.util.StreamUtils;
 
 import com.maplecloudy.osrc.boot.buildpack.platform.io.IOConsumer;
 
 /**
- * A layer that can be written to an {@link ImageArchive}.
+ * A layer that can be written to an {@link ImageArchive}. The digest and size of the
+ * layer are computed up front by generating the TAR without keeping it. The TAR is then
+ * generated again, and checked against the digest, when the layer is written so that
+ * large layers never need to be buffered to a temporary file. Layers can also be created
+ * from a TAR file that was written earlier with a known ID, in which case the file is
+ * copied as-is, or generated again from its archive if the file no longer exists.
  *
  * @author Phillip Webb
  * @since 2.3.0
  */
 public class Layer implements Content {
 
-	private final Content content;
+	private final TarArchive tarArchive;
+
+	private final Path tarFile;
+
+	private final byte[] digest;
+
+	private final int size;
 
 	private final LayerId id;
 
 	Layer(TarArchive tarArchive) throws NoSuchAlgorithmException, IOException {
-		MessageDigest digest = MessageDigest.getInstance("SHA-256");
-		this.content = InspectedContent.of(tarArchive::writeTo, digest::update);
-		this.id = LayerId.ofSha256Digest(digest.digest());
+		DigestingOutputStream outputStream = new DigestingOutputStream(null);
+		tarArchive.writeTo(outputStream);
+		Assert.state(outputStream.size <= Integer.MAX_VALUE, "Layer is too large");
+		this.tarArchive = tarArchive;
+		this.tarFile = null;
+		this.digest = outputStream.digest.digest();
+		this.size = (int) outputStream.size;
+		this.id = LayerId.ofSha256Digest(this.digest);
+	}
+
+	private Layer(Path tarFile, LayerId id, TarArchive tarArchive) throws IOException {
+		long size = Files.size(tarFile);
+		Assert.state(size <= Integer.MAX_VALUE, "Layer is too large");
+		this.tarArchive = tarArchive;
+		this.tarFile = tarFile;
+		this.digest = null;
+		this.size = (int) size;
+		this.id = id;
 	}
 
 	/**
@@ -57,12 +88,42 @@ public class Layer implements Content {
 
 	@Override
 	public int size() {
-		return this.content.size();
+		return this.size;
 	}
 
 	@Override
 	public void writeTo(OutputStream outputStream) throws IOException {
-		this.content.writeTo(outputStream);
+		if (this.tarFile != null) {
+			InputStream inputStream;
+			try {
+				inputStream = Files.newInputStream(this.tarFile);
+			}
+			catch (NoSuchFileException ex) {
+				// Removed since the layer was created, for example by another build
+				writeTarArchiveTo(outputStream);
+				return;
+			}
+			try (InputStream content = inputStream) {
+				StreamUtils.copy(content, outputStream);
+			}
+			return;
+		}
+		writeTarArchiveTo(outputStream);
+	}
+
+	private void writeTarArchiveTo(OutputStream outputStream) throws IOException {
+		try {
+			DigestingOutputStream digestingOutputStream = new DigestingOutputStream(outputStream);
+			this.tarArchive.writeTo(digestingOutputStream);
+			byte[] digest = digestingOutputStream.digest.digest();
+			boolean matches = (this.digest != null) ? Arrays.equals(digest, this.digest)
+					: LayerId.ofSha256Digest(digest).equals(this.id);
+			Assert.state(digestingOutputStream.size == this.size && matches,
+					() -> "Content of layer " + this.id + " changed after its digest was calculated");
+		}
+		catch (NoSuchAlgorithmException ex) {
+			throw new IllegalStateException(ex);
+		}
 	}
 
 	/**
@@ -92,4 +153,66 @@ public class Layer implements Content {
 		}
 	}
 
+	/**
+	 * Factory method to create a new {@link Layer} from a TAR file that was previously
+	 * written for a layer with the given ID. The digest of the file is not calculated
+	 * again. If the file has been deleted by the time the layer is written, the given
+	 * archive, which must produce the same content, is written instead.
+	 * @param tarFile the TAR file holding the contents of the layer
+	 * @param id the ID of the layer
+	 * @param tarArchive the archive the TAR file was generated from
+	 * @return a new layer instance
+	 * @throws IOException on IO error
+	 */
+	public static Layer fromTarFile(Path tarFile, LayerId id, TarArchive tarArchive) throws IOException {
+		Assert.notNull(tarFile, "TarFile must not be null");
+		Assert.notNull(id, "Id must not be null");
+		Assert.notNull(tarArchive, "TarArchive must not be null");
+		return new Layer(tarFile, id, tarArchive);
+	}
+
+	/**
+	 * {@link OutputStream} that calculates the SHA-256 digest and size of the content
+	 * written to an optional delegate.
+	 */
+	private static final class DigestingOutputStream extends OutputStream {
+
+		private final OutputStream delegate;
+
+		private final MessageDigest digest;
+
+		private long size;
+
+		DigestingOutputStream(OutputStream delegate) throws NoSuchAlgorithmException {
+			this.delegate = delegate;
+			this.digest = MessageDigest.getInstance("SHA-256");
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (this.delegate != null) {
+				this.delegate.write(b);
+			}
+			this.digest.update((byte) b);
+			this.size++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if (this.delegate != null) {
+				this.delegate.write(b, off, len);
+			}
+			this.digest.update(b, off, len);
+			this.size += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if (this.delegate != null) {
+				this.delegate.flush();
+			}
+		}
+
+	}
+
 }
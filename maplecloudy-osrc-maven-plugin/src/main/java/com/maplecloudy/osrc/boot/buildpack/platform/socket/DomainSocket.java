@@ -20,14 +20,20 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.Buffer;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import com.sun.jna.LastErrorException;
 import com.sun.jna.Native;
 import com.sun.jna.Platform;
 
 /**
- * A {@link Socket} implementation for Linux of BSD domain sockets.
+ * A {@link Socket} implementation for Linux of BSD domain sockets. Data is read and
+ * written through direct buffers so that native calls can use the buffer memory without
+ * copying, and reads honor the {@link #setSoTimeout(int) socket timeout} so that pooled
+ * connections can be checked for staleness.
  *
  * @author Phillip Webb
  * @since 2.3.0
@@ -44,12 +50,22 @@ public abstract class DomainSocket extends AbstractSocket {
 
 	protected static final int SOCK_STREAM = 1;
 
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private static final short POLLIN = 1;
+
+	private static final int POLLFD_SIZE = 8;
+
+	private static final int EINTR = 4;
+
 	private final FileDescriptor fileDescriptor;
 
 	private final InputStream inputStream;
 
 	private final OutputStream outputStream;
 
+	private volatile int timeout;
+
 	static {
 		Native.register(Platform.C_LIBRARY_NAME);
 	}
@@ -77,6 +93,10 @@ public abstract class DomainSocket extends AbstractSocket {
 				return -1;
 			}
 			try {
+				int timeout = this.timeout;
+				if (timeout > 0) {
+					awaitReadable(handle.intValue(), timeout);
+				}
 				return read(handle.intValue(), buffer, buffer.remaining());
 			}
 			catch (LastErrorException ex) {
@@ -85,11 +105,34 @@ public abstract class DomainSocket extends AbstractSocket {
 		}
 	}
 
+	private void awaitReadable(int fd, int timeout) throws SocketTimeoutException {
+		ByteBuffer pollFd = ByteBuffer.allocateDirect(POLLFD_SIZE).order(ByteOrder.nativeOrder());
+		pollFd.putInt(0, fd);
+		pollFd.putShort(4, POLLIN);
+		while (true) {
+			try {
+				if (poll(pollFd, 1, timeout) == 0) {
+					throw new SocketTimeoutException("Read timed out");
+				}
+				return;
+			}
+			catch (LastErrorException ex) {
+				if (ex.getErrorCode() != EINTR) {
+					throw ex;
+				}
+			}
+		}
+	}
+
 	public void write(ByteBuffer buffer) throws IOException {
 		try (FileDescriptor.Handle handle = this.fileDescriptor.acquire()) {
 			if (!handle.isClosed()) {
 				try {
-					write(handle.intValue(), buffer, buffer.remaining());
+					// The native call may accept only part of the buffer
+					while (buffer.hasRemaining()) {
+						int written = write(handle.intValue(), buffer, buffer.remaining());
+						((Buffer) buffer).position(buffer.position() + written);
+					}
 				}
 				catch (LastErrorException ex) {
 					throw new IOException(ex);
@@ -98,6 +141,16 @@ public abstract class DomainSocket extends AbstractSocket {
 		}
 	}
 
+	@Override
+	public void setSoTimeout(int timeout) {
+		this.timeout = timeout;
+	}
+
+	@Override
+	public int getSoTimeout() {
+		return this.timeout;
+	}
+
 	@Override
 	public InputStream getInputStream() {
 		return this.inputStream;
@@ -129,6 +182,8 @@ public abstract class DomainSocket extends AbstractSocket {
 
 	private native int close(int fd) throws LastErrorException;
 
+	private native int poll(ByteBuffer fds, int nfds, int timeout) throws LastErrorException;
+
 	/**
 	 * Return a new {@link DomainSocket} for the given path.
 	 * @param path the path to the domain socket
@@ -147,15 +202,20 @@ public abstract class DomainSocket extends AbstractSocket {
 	}
 
 	/**
-	 * {@link InputStream} returned from the {@link DomainSocket}.
+	 * {@link InputStream} returned from the {@link DomainSocket}. Reads are served from
+	 * a direct buffer that is filled by a single native call.
 	 */
 	private class DomainSocketInputStream extends InputStream {
 
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+		DomainSocketInputStream() {
+			((Buffer) this.buffer).limit(0);
+		}
+
 		@Override
 		public int read() throws IOException {
-			ByteBuffer buffer = ByteBuffer.allocate(1);
-			int amountRead = DomainSocket.this.read(buffer);
-			return (amountRead != 1) ? -1 : buffer.get() & 0xFF;
+			return fill() ? this.buffer.get() & 0xFF : -1;
 		}
 
 		@Override
@@ -163,28 +223,57 @@ public abstract class DomainSocket extends AbstractSocket {
 			if (len == 0) {
 				return 0;
 			}
-			int amountRead = DomainSocket.this.read(ByteBuffer.wrap(b, off, len));
-			return (amountRead > 0) ? amountRead : -1;
+			if (!fill()) {
+				return -1;
+			}
+			int amountRead = Math.min(len, this.buffer.remaining());
+			this.buffer.get(b, off, amountRead);
+			return amountRead;
+		}
+
+		@Override
+		public int available() {
+			return this.buffer.remaining();
+		}
+
+		private boolean fill() throws IOException {
+			if (this.buffer.hasRemaining()) {
+				return true;
+			}
+			((Buffer) this.buffer).clear();
+			int amountRead = DomainSocket.this.read(this.buffer);
+			((Buffer) this.buffer).limit(Math.max(amountRead, 0));
+			return amountRead > 0;
 		}
 
 	}
 
 	/**
-	 * {@link OutputStream} returned from the {@link DomainSocket}.
+	 * {@link OutputStream} returned from the {@link DomainSocket}. Data is copied to a
+	 * direct buffer before it is written.
 	 */
 	private class DomainSocketOutputStream extends OutputStream {
 
+		private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
 		@Override
 		public void write(int b) throws IOException {
-			ByteBuffer buffer = ByteBuffer.allocate(1);
-			buffer.put(0, (byte) (b & 0xFF));
-			DomainSocket.this.write(buffer);
+			((Buffer) this.buffer).clear();
+			this.buffer.put((byte) (b & 0xFF));
+			((Buffer) this.buffer).flip();
+			DomainSocket.this.write(this.buffer);
 		}
 
 		@Override
 		public void write(byte[] b, int off, int len) throws IOException {
-			if (len != 0) {
-				DomainSocket.this.write(ByteBuffer.wrap(b, off, len));
+			while (len > 0) {
+				int amount = Math.min(len, this.buffer.capacity());
+				((Buffer) this.buffer).clear();
+				this.buffer.put(b, off, amount);
+				((Buffer) this.buffer).flip();
+				DomainSocket.this.write(this.buffer);
+				off += amount;
+				len -= amount;
 			}
 		}
 
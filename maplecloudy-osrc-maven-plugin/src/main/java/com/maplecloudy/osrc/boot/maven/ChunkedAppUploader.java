@@ -0,0 +1,349 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.maven;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.maplecloudy.osrc.boot.HttpUtils;
+import org.apache.commons.httpclient.DefaultHttpMethodRetryHandler;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.commons.httpclient.params.HttpMethodParams;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Uploads an app file to osrc app center as fixed-size chunks.
+ * <p>
+ * The upload is identified by the SHA-1 of the whole file, so the server can
+ * report the chunks it has already acknowledged and an interrupted upload
+ * resumes from there instead of starting again. Each chunk carries its own
+ * SHA-1 and is retried independently, up to {@value #MAX_ATTEMPTS} attempts in
+ * total, and several chunks can be in flight at the same time over the shared
+ * connection pool of {@link HttpUtils}. The retry handler of that client is
+ * not used for chunks so that a chunk is never sent more often than that.
+ * <p>
+ * Protocol:
+ * <ul>
+ * <li>{@code POST /api/apps/uploads} with the file name, size, chunk size and
+ * SHA-1, answering {@code {"uploadId": "...", "received": [0, 1, ...]}}</li>
+ * <li>{@code PUT /api/apps/uploads/{uploadId}/chunks/{index}} with the chunk
+ * bytes and an {@code X-Chunk-Sha1} header</li>
+ * </ul>
+ * The returned upload id is then passed to the install request in place of the
+ * file itself.
+ *
+ * @author osrc
+ */
+class ChunkedAppUploader {
+
+  static final String CHUNK_SHA1_HEADER = "X-Chunk-Sha1";
+
+  private static final int BUFFER_SIZE = 32 * 1024;
+
+  static final int MAX_ATTEMPTS = 3;
+
+  private static final DefaultHttpMethodRetryHandler NO_RETRY = new DefaultHttpMethodRetryHandler(
+      0, false);
+
+  private static final ObjectMapper om = new ObjectMapper();
+
+  private final String remote;
+
+  private final Header header;
+
+  private final int chunkSize;
+
+  private final int threads;
+
+  private final Log log;
+
+  ChunkedAppUploader(String remote, Header header, int chunkSize, int threads,
+      Log log) {
+    if (chunkSize <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive");
+    }
+    this.remote = remote;
+    this.header = header;
+    this.chunkSize = chunkSize;
+    this.threads = Math.max(1, threads);
+    this.log = log;
+  }
+
+  /**
+   * Upload the given file, skipping any chunks the server already holds.
+   *
+   * @param file the file to upload
+   * @return the upload id to reference the file in the install request
+   * @throws IOException on IO error or if a chunk could not be uploaded
+   */
+  String upload(File file) throws IOException {
+    long size = file.length();
+    int chunks = (int) Math.max(1, (size + this.chunkSize - 1) / this.chunkSize);
+    HttpClient client = HttpUtils.createClient();
+    ExecutorService executor = null;
+    try {
+      Upload upload = start(client, file, size, chunks);
+      int missing = chunks - upload.received.cardinality();
+      if (missing < chunks) {
+        this.log.info("Resuming upload " + upload.id + ", " + (chunks - missing)
+            + " of " + chunks + " chunks already received");
+      }
+      if (missing == 0) {
+        return upload.id;
+      }
+      long remaining = 0;
+      for (int index = 0; index < chunks; index++) {
+        if (!upload.received.get(index)) {
+          remaining += getChunkLength(index, size);
+        }
+      }
+      Progress progress = new Progress(missing, remaining);
+      executor = Executors.newFixedThreadPool(Math.min(this.threads, missing),
+          (runnable) -> {
+            Thread thread = new Thread(runnable,
+                "osrc-upload-" + progress.threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+          });
+      List<Future<?>> futures = new ArrayList<>(missing);
+      try (RandomAccessFile source = new RandomAccessFile(file, "r")) {
+        for (int index = 0; index < chunks; index++) {
+          if (!upload.received.get(index)) {
+            int chunk = index;
+            futures.add(executor.submit(() -> {
+              uploadChunk(client, source, upload.id, chunk, size, progress);
+              return null;
+            }));
+          }
+        }
+        for (Future<?> future : futures) {
+          get(future);
+        }
+      }
+      return upload.id;
+    }
+    finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  private Upload start(HttpClient client, File file, long size, int chunks)
+      throws IOException {
+    Map<String,Object> request = new HashMap<>();
+    request.put("fileName", file.getName());
+    request.put("size", size);
+    request.put("chunkSize", this.chunkSize);
+    request.put("chunks", chunks);
+    request.put("sha1", sha1(file));
+    PostMethod method = new PostMethod(this.remote + "/api/apps/uploads");
+    try {
+      method.addRequestHeader(this.header);
+      method.setRequestEntity(new StringRequestEntity(
+          om.writeValueAsString(request), "application/json", "UTF-8"));
+      int status = client.executeMethod(method);
+      if (status != HttpStatus.SC_OK) {
+        throw new IOException(
+            "Failed to start chunked upload with code: " + status
+                + ",error message:" + method.getResponseBodyAsString());
+      }
+      Map<?,?> response = om.readValue(method.getResponseBodyAsStream(),
+          Map.class);
+      BitSet received = new BitSet(chunks);
+      Object acknowledged = response.get("received");
+      if (acknowledged instanceof List) {
+        for (Object index : (List<?>) acknowledged) {
+          int chunk = ((Number) index).intValue();
+          if (chunk >= 0 && chunk < chunks) {
+            received.set(chunk);
+          }
+        }
+      }
+      return new Upload(response.get("uploadId").toString(), received);
+    }
+    finally {
+      method.releaseConnection();
+    }
+  }
+
+  private void uploadChunk(HttpClient client, RandomAccessFile source,
+      String uploadId, int index, long size, Progress progress)
+      throws IOException {
+    byte[] bytes = new byte[getChunkLength(index, size)];
+    synchronized (source) {
+      source.seek((long) index * this.chunkSize);
+      source.readFully(bytes);
+    }
+    String checksum = toHex(getSha1Digest().digest(bytes));
+    for (int attempt = 1; ; attempt++) {
+      PutMethod method = new PutMethod(
+          this.remote + "/api/apps/uploads/" + uploadId + "/chunks/" + index);
+      try {
+        method.getParams().setParameter(HttpMethodParams.RETRY_HANDLER, NO_RETRY);
+        method.addRequestHeader(this.header);
+        method.addRequestHeader(CHUNK_SHA1_HEADER, checksum);
+        method.setRequestEntity(
+            new ByteArrayRequestEntity(bytes, "application/octet-stream"));
+        int status = client.executeMethod(method);
+        if (status == HttpStatus.SC_OK || status == HttpStatus.SC_CREATED) {
+          progress.chunkUploaded(bytes.length, this.log);
+          return;
+        }
+        if (attempt >= MAX_ATTEMPTS) {
+          throw new IOException(
+              "Failed to upload chunk " + index + " with code: " + status
+                  + ",error message:" + method.getResponseBodyAsString());
+        }
+      }
+      catch (IOException ex) {
+        if (attempt >= MAX_ATTEMPTS) {
+          throw ex;
+        }
+      }
+      finally {
+        method.releaseConnection();
+      }
+      this.log.warn("Retrying chunk " + index + " (attempt " + (attempt + 1)
+          + " of " + MAX_ATTEMPTS + ")");
+    }
+  }
+
+  private int getChunkLength(int index, long size) {
+    return (int) Math.min(this.chunkSize, size - (long) index * this.chunkSize);
+  }
+
+  static void get(Future<?> future) throws IOException {
+    try {
+      future.get();
+    }
+    catch (InterruptedException ex) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while uploading app file", ex);
+    }
+    catch (ExecutionException ex) {
+      Throwable cause = ex.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
+  private static String sha1(File file) throws IOException {
+    MessageDigest digest = getSha1Digest();
+    try (InputStream inputStream = new FileInputStream(file)) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int bytesRead;
+      while ((bytesRead = inputStream.read(buffer)) != -1) {
+        digest.update(buffer, 0, bytesRead);
+      }
+    }
+    return toHex(digest.digest());
+  }
+
+  static MessageDigest getSha1Digest() {
+    try {
+      return MessageDigest.getInstance("SHA-1");
+    }
+    catch (NoSuchAlgorithmException ex) {
+      throw new IllegalStateException(ex);
+    }
+  }
+
+  static String toHex(byte[] bytes) {
+    StringBuilder hex = new StringBuilder(bytes.length * 2);
+    for (byte b : bytes) {
+      hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+      hex.append(Character.forDigit(b & 0xF, 16));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * An upload started on the server.
+   */
+  private static final class Upload {
+
+    private final String id;
+
+    private final BitSet received;
+
+    Upload(String id, BitSet received) {
+      this.id = id;
+      this.received = received;
+    }
+
+  }
+
+  /**
+   * Tracks the uploaded chunks and reports throughput.
+   */
+  private static final class Progress {
+
+    private final AtomicInteger threads = new AtomicInteger();
+
+    private final AtomicInteger uploaded = new AtomicInteger();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    private final int chunks;
+
+    private final long size;
+
+    private final long startTime = System.nanoTime();
+
+    Progress(int chunks, long size) {
+      this.chunks = chunks;
+      this.size = size;
+    }
+
+    void chunkUploaded(int length, Log log) {
+      int uploaded = this.uploaded.incrementAndGet();
+      long bytes = this.bytes.addAndGet(length);
+      double seconds = Math.max(System.nanoTime() - this.startTime, 1) / 1e9;
+      log.info(String.format("Uploaded chunk %d/%d, %.1f MB of %.1f MB (%.1f MB/s)",
+          uploaded, this.chunks, bytes / 1048576.0, this.size / 1048576.0,
+          bytes / 1048576.0 / seconds));
+    }
+
+  }
+
+}
@@ -40,6 +40,8 @@ import java.io.File;
 import java.io.IOException;
 import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
@@ -124,6 +126,33 @@ public class InstallOsrcAppMojo extends AbstractMojo {
   @Parameter(property = "install.osrc.skip", defaultValue = "false")
   private boolean skip;
 
+  /**
+   * Upload the app file in fixed-size chunks that can be resumed after a failed
+   * deploy instead of as a single multipart request.
+   */
+  @Parameter(property = "install.osrc.chunked", defaultValue = "false")
+  private boolean chunkedUpload;
+
+  /**
+   * Size in bytes of each chunk when {@link #chunkedUpload} is enabled.
+   */
+  @Parameter(property = "install.osrc.chunkSize", defaultValue = "8388608")
+  private int chunkSize;
+
+  /**
+   * Number of chunks uploaded in parallel when {@link #chunkedUpload} is
+   * enabled.
+   */
+  @Parameter(property = "install.osrc.uploadThreads", defaultValue = "4")
+  private int uploadThreads;
+
+  /**
+   * Upload only the nested libraries and layers that osrc app center does not
+   * already hold, identified by their SHA-1, instead of the whole app file.
+   */
+  @Parameter(property = "install.osrc.layerDiff", defaultValue = "false")
+  private boolean layerDiff;
+
   @Override
   public void execute() throws MojoExecutionException, MojoFailureException {
     if (skip) {
@@ -177,7 +206,7 @@ public class InstallOsrcAppMojo extends AbstractMojo {
         File target = getTargetFile(this.finalName, this.classifier,
             this.outputDirectory);
         getLog().info("install osrc file:" + target);
-        HttpClient hc = new HttpClient();
+        HttpClient hc = HttpUtils.createClient();
         hc.getParams().setParameter("http.useragent",
             "Mozilla/5.0 (Windows; U; MSIE 9.0; Windows NT 9.0; en-US)");
         Header header = new Header();
@@ -208,17 +237,33 @@ public class InstallOsrcAppMojo extends AbstractMojo {
         bundleMap.put("bundleStr", getBundleStr(app.getBundle()));
         bundleMap.put("type", config.getScope().getType());
         bundleMap.put("scopeId", Integer.valueOf(config.getScope().getId()));
+        // The app check does not depend on the project, issue it alongside the
+        // first project lookup and fail before asking anything if it is rejected
+        JarFile appJar = targerJar;
+        CompletableFuture<FilePart> appCheck = HttpUtils.async(
+            () -> executeAppCheck(appJar, target, hc, config.getRemote(),
+                header, indexEntry));
+        getLog().info("Check project info......");
+        String prBundlStr = HttpUtils.doGet(
+            config.getRemote() + "/api/projects/app-deploy", bundleMap, header);
+        FilePart indexFilePart = join(appCheck);
+        if (indexFilePart == null) {
+          return;
+        }
         boolean checkPrInfoFlag = true;
         while (checkPrInfoFlag) {
-          getLog().info("Check project info......");
-          String prBundlStr = HttpUtils.doGet(
-              config.getRemote() + "/api/projects/app-deploy", bundleMap,
-              header);
+          if (prBundlStr == null) {
+            getLog().info("Check project info......");
+            prBundlStr = HttpUtils.doGet(
+                config.getRemote() + "/api/projects/app-deploy", bundleMap,
+                header);
+          }
           if (ObjectUtils.isEmpty(prBundlStr)) {
             getLog().error("Got project bundle data error!");
             return;
           } else {
             projectMap = om.readValue(prBundlStr, Map.class);
+            prBundlStr = null;
           }
           boolean exist = Boolean.valueOf(projectMap.get("exist").toString());
           if (exist) {
@@ -252,20 +297,38 @@ public class InstallOsrcAppMojo extends AbstractMojo {
           }
         }
 
-        FilePart indexFilePart = executeAppCheck(targerJar, target, hc,
-            config.getRemote(), header, indexEntry);
-        if (indexFilePart == null) {
-          return;
-        }
 
         //app install
-        m = new PostMethod(
-            config.getRemote() + "/api/apps/install-app-file" + "?projectId="
-                + projectMap.get("projectId").toString() + "&scopeId="
-                + config.getScope().getId() + "&type=" + config.getScope()
-                .getType());
+        String installQuery = "?projectId=" + projectMap.get("projectId")
+            .toString() + "&scopeId=" + config.getScope().getId() + "&type="
+            + config.getScope().getType();
+        Part[] parts;
+        if (layerDiff) {
+          getLog().info("begin to upload changed app layers...");
+          String blobManifest = new LayerDiffUploader(config.getRemote(),
+              header, uploadThreads, getLog()).upload(targerJar);
+          m = new PostMethod(
+              config.getRemote() + "/api/apps/install-app-manifest"
+                  + installQuery);
+          parts = new Part[] {indexFilePart, new FilePart("manifest",
+              new ByteArrayPartSource("manifest.json",
+                  blobManifest.getBytes(StandardCharsets.UTF_8)),
+              "application/json", StandardCharsets.UTF_8.name())};
+        } else if (chunkedUpload) {
+          getLog().info("begin to upload app in chunks of " + chunkSize
+              + " bytes...");
+          String uploadId = new ChunkedAppUploader(config.getRemote(), header,
+              chunkSize, uploadThreads, getLog()).upload(target);
+          m = new PostMethod(
+              config.getRemote() + "/api/apps/install-app-upload" + installQuery
+                  + "&uploadId=" + uploadId);
+          parts = new Part[] {indexFilePart};
+        } else {
+          m = new PostMethod(
+              config.getRemote() + "/api/apps/install-app-file" + installQuery);
+          parts = new Part[] {indexFilePart, new FilePart("appFile", target)};
+        }
         m.addRequestHeader(header);
-        Part[] parts = {indexFilePart, new FilePart("appFile", target)};
         //StringPart stringPart = new StringPart("projectConfig",
         //    om.writeValueAsString(prjConfig));
         //stringPart.setContentType("application/json");
@@ -332,6 +395,7 @@ public class InstallOsrcAppMojo extends AbstractMojo {
     } else {
       //2. 校验.osrc文件内容
       Config osrcConfig = om.readValue(osrcFile, Config.class);
+      CompletableFuture<Boolean> scopeCheck = null;
       if (ObjectUtils.isEmpty(osrcConfig.getRemote())) {
         osrcAppSite = "https://www.osrc.com";
         osrcConfig.setRemote(osrcAppSite);
@@ -351,9 +415,22 @@ public class InstallOsrcAppMojo extends AbstractMojo {
       } else {
         header.setName("Authorization");
         header.setValue("Bearer " + osrcConfig.getAccessToken());
+        //token和scope的校验相互独立,同时发起
+        Scope scope = osrcConfig.getScope();
+        if (isScopeComplete(scope)) {
+          Header scopeHeader = new Header(header.getName(), header.getValue());
+          scopeCheck = HttpUtils.async(
+              () -> checkScopeValid(osrcConfig.getRemote(), scope,
+                  scopeHeader));
+        }
         boolean checkLoginTokenValid = checkLoginTokenValid(
             osrcConfig.getRemote(), header);
         if (!checkLoginTokenValid) {
+          //scope需要使用新的token重新校验
+          if (scopeCheck != null) {
+            scopeCheck.cancel(true);
+            scopeCheck = null;
+          }
           boolean initLoginInfoSuccess = initLoginInfoSuccess(osrcConfig,
               osrcConfig.getRemote(), header, sc);
           if (!initLoginInfoSuccess) {
@@ -365,15 +442,15 @@ public class InstallOsrcAppMojo extends AbstractMojo {
       }
       //校验scope
       Scope scope = osrcConfig.getScope();
-      if (ObjectUtils.isEmpty(scope) || ObjectUtils.isEmpty(scope.getId())
-          || ObjectUtils.isEmpty(scope.getType())) {
+      if (!isScopeComplete(scope)) {
         scope = initScope(sc, osrcConfig.getRemote(), header);
         osrcConfig.setScope(scope);
         om.writeValue(osrcFile, osrcConfig);
       } else {
-        boolean checkScopeValid = checkScopeValid(osrcConfig.getRemote(), scope,
-            header, sc);
+        boolean checkScopeValid = (scopeCheck != null) ? join(scopeCheck)
+            : checkScopeValid(osrcConfig.getRemote(), scope, header);
         if (!checkScopeValid) {
+          getLog().error("Scope data error! Please init the scope data again!");
           scope = initScope(sc, osrcConfig.getRemote(), header);
           osrcConfig.setScope(scope);
           om.writeValue(osrcFile, osrcConfig);
@@ -384,19 +461,38 @@ public class InstallOsrcAppMojo extends AbstractMojo {
     }
   }
 
+  private boolean isScopeComplete(Scope scope) {
+    return !ObjectUtils.isEmpty(scope) && !ObjectUtils.isEmpty(scope.getId())
+        && !ObjectUtils.isEmpty(scope.getType());
+  }
+
+  private <T> T join(CompletableFuture<T> future) throws Exception {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      Throwable cause = e.getCause();
+      throw (cause instanceof Exception) ? (Exception) cause : e;
+    }
+  }
+
+  /**
+   * 校验scope是否有效。该校验可能与token校验同时进行,因此不输出日志,
+   * 由调用方在使用结果时输出。
+   */
   private boolean checkScopeValid(String osrcAppSite, Scope scope,
-      Header header, Scanner sc) throws JsonProcessingException {
-    Map<String,Object> maps = new HashMap();
-    maps.put("scopeId", Integer.valueOf(scope.getId()));
-    maps.put("type", scope.getType());
-
-    String accessStr = HttpUtils.doGet(osrcAppSite + "/api/users/deploy/access",
-        maps, header);
-    if (ObjectUtils.isEmpty(accessStr)) {
-      getLog().error("Scope data error! Please init the scope data again!");
+      Header header) {
+    GetMethod method = new GetMethod(
+        osrcAppSite + "/api/users/deploy/access?scopeId=" + Integer.valueOf(
+            scope.getId()) + "&type=" + scope.getType());
+    try {
+      method.addRequestHeader(header);
+      return HttpUtils.createClient().executeMethod(method) == 200
+          && !ObjectUtils.isEmpty(method.getResponseBodyAsString());
+    } catch (IOException e) {
       return false;
+    } finally {
+      method.releaseConnection();
     }
-    return true;
   }
 
   private boolean checkLoginTokenValid(String osrcAppSite, Header header)
@@ -486,22 +582,26 @@ public class InstallOsrcAppMojo extends AbstractMojo {
         check.getParams());
 
     check.setRequestEntity(mreIndex);
-    int code = hc.executeMethod(check);
-    if (code == 200) {
-      Map map = om.readValue(check.getResponseBody(), Map.class);
-      Integer innerCode = (Integer) map.get("code");
-      if (200 == innerCode) {
-        getLog().info(map.get("msg").toString());
+    try {
+      int code = hc.executeMethod(check);
+      if (code == 200) {
+        Map map = om.readValue(check.getResponseBody(), Map.class);
+        Integer innerCode = (Integer) map.get("code");
+        if (200 == innerCode) {
+          getLog().info(map.get("msg").toString());
+        } else {
+          getLog().error(map.get("msg") + "\nApp info: "
+              + om.writeValueAsString(map.get("data")));
+          return null;
+        }
       } else {
-        getLog().error(map.get("msg") + "\nApp info: " + om.writeValueAsString(
-            map.get("data")));
+        getLog().error(
+            "install osrc file:" + target + " failed with code: " + code
+                + ",error message:" + check.getResponseBodyAsString());
         return null;
       }
-    } else {
-      getLog().error(
-          "install osrc file:" + target + " failed with code: " + code
-              + ",error message:" + check.getResponseBodyAsString());
-      return null;
+    } finally {
+      check.releaseConnection();
     }
     return indexFilePart;
   }
@@ -0,0 +1,434 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.maven;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.maplecloudy.osrc.boot.HttpUtils;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.HttpClient;
+import org.apache.commons.httpclient.HttpStatus;
+import org.apache.commons.httpclient.methods.ByteArrayRequestEntity;
+import org.apache.commons.httpclient.methods.InputStreamRequestEntity;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.commons.httpclient.methods.PutMethod;
+import org.apache.commons.httpclient.methods.RequestEntity;
+import org.apache.commons.httpclient.methods.StringRequestEntity;
+import org.apache.maven.plugin.logging.Log;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Uploads only the parts of a repackaged app that osrc app center does not
+ * already hold.
+ * <p>
+ * The app is split into blobs: one per nested library, as listed by the
+ * classpath index, and one per layer of the layers index holding the remaining
+ * entries of that layer. Each blob is identified by its SHA-1, the server is
+ * asked which of them are missing and only those are uploaded, so a redeploy
+ * that only changes application classes sends a few KB rather than the whole
+ * jar.
+ * <p>
+ * Protocol:
+ * <ul>
+ * <li>{@code POST /api/apps/blobs/missing} with {@code {"sha1": [...]}},
+ * answering {@code {"missing": [...]}}</li>
+ * <li>{@code PUT /api/apps/blobs/{sha1}} with the blob content</li>
+ * </ul>
+ * The returned manifest lists every blob with its entry name, layer and SHA-1
+ * so that the server can reassemble the app. Layer blobs are zip files of the
+ * layer entries.
+ *
+ * @author osrc
+ */
+class LayerDiffUploader {
+
+  static final String LIBRARY = "library";
+
+  static final String LAYER = "layer";
+
+  private static final String BOOT_LIB_ATTRIBUTE = "Osrc-Boot-Lib";
+
+  private static final String BOOT_CLASSPATH_INDEX_ATTRIBUTE = "Osrc-Boot-Classpath-Index";
+
+  private static final String BOOT_LAYERS_INDEX_ATTRIBUTE = "Osrc-Boot-Layers-Index";
+
+  private static final String DEFAULT_LAYER = "application";
+
+  private static final int BUFFER_SIZE = 32 * 1024;
+
+  private static final ObjectMapper om = new ObjectMapper();
+
+  private final String remote;
+
+  private final Header header;
+
+  private final int threads;
+
+  private final Log log;
+
+  LayerDiffUploader(String remote, Header header, int threads, Log log) {
+    this.remote = remote;
+    this.header = header;
+    this.threads = Math.max(1, threads);
+    this.log = log;
+  }
+
+  /**
+   * Upload the blobs of the given app that the server is missing.
+   *
+   * @param jar the repackaged app
+   * @return the JSON manifest of all blobs to pass to the install request
+   * @throws IOException on IO error or if a blob could not be uploaded
+   */
+  String upload(JarFile jar) throws IOException {
+    List<Blob> blobs = getBlobs(jar);
+    HttpClient client = HttpUtils.createClient();
+    ExecutorService executor = null;
+    try {
+      Set<String> missing = getMissing(client, blobs);
+      List<Blob> uploads = new ArrayList<>();
+      long total = 0;
+      long upload = 0;
+      for (Blob blob : blobs) {
+        total += blob.size;
+        // The same library may be present under more than one name
+        if (missing.remove(blob.sha1)) {
+          uploads.add(blob);
+          upload += blob.size;
+        }
+      }
+      this.log.info(
+          "Uploading " + uploads.size() + " of " + blobs.size() + " blobs, "
+              + upload + " of " + total + " bytes");
+      if (!uploads.isEmpty()) {
+        AtomicInteger count = new AtomicInteger();
+        executor = Executors.newFixedThreadPool(
+            Math.min(this.threads, uploads.size()), (runnable) -> {
+              Thread thread = new Thread(runnable,
+                  "osrc-upload-" + count.incrementAndGet());
+              thread.setDaemon(true);
+              return thread;
+            });
+        List<Future<?>> futures = new ArrayList<>(uploads.size());
+        for (Blob blob : uploads) {
+          futures.add(executor.submit(() -> {
+            uploadBlob(client, jar, blob);
+            return null;
+          }));
+        }
+        for (Future<?> future : futures) {
+          ChunkedAppUploader.get(future);
+        }
+      }
+      return writeManifest(blobs);
+    }
+    finally {
+      if (executor != null) {
+        executor.shutdownNow();
+      }
+    }
+  }
+
+  private List<Blob> getBlobs(JarFile jar) throws IOException {
+    Manifest manifest = jar.getManifest();
+    Attributes attributes = (manifest != null) ? manifest.getMainAttributes()
+        : new Attributes();
+    Set<String> libraries = getLibraries(jar, attributes);
+    Map<String,List<String>> layers = readIndex(jar,
+        attributes.getValue(BOOT_LAYERS_INDEX_ATTRIBUTE));
+    Map<String,List<JarEntry>> layerEntries = new LinkedHashMap<>();
+    for (String layer : layers.keySet()) {
+      layerEntries.put(layer, new ArrayList<>());
+    }
+    Map<String,Blob> libraryBlobs = new LinkedHashMap<>();
+    for (JarEntry entry : Collections.list(jar.entries())) {
+      String layer = getLayer(layers, entry.getName());
+      if (libraries.contains(entry.getName())) {
+        libraryBlobs.put(entry.getName(),
+            new Blob(LIBRARY, entry.getName(), layer, sha1(jar, entry),
+                entry.getSize()));
+      } else {
+        layerEntries.computeIfAbsent(layer, (key) -> new ArrayList<>())
+            .add(entry);
+      }
+    }
+    List<Blob> blobs = new ArrayList<>();
+    for (Map.Entry<String,List<JarEntry>> entry : layerEntries.entrySet()) {
+      if (!entry.getValue().isEmpty()) {
+        byte[] content = zip(jar, entry.getValue());
+        blobs.add(new Blob(LAYER, entry.getKey(), entry.getKey(),
+            ChunkedAppUploader.toHex(
+                ChunkedAppUploader.getSha1Digest().digest(content)),
+            content.length, content));
+      }
+    }
+    // Keep libraries in classpath order so the server can rebuild the index
+    for (String library : libraries) {
+      Blob blob = libraryBlobs.get(library);
+      if (blob != null) {
+        blobs.add(blob);
+      }
+    }
+    return blobs;
+  }
+
+  private Set<String> getLibraries(JarFile jar, Attributes attributes)
+      throws IOException {
+    Set<String> libraries = new LinkedHashSet<>();
+    String classpathIndex = attributes.getValue(BOOT_CLASSPATH_INDEX_ATTRIBUTE);
+    if (classpathIndex != null && jar.getEntry(classpathIndex) != null) {
+      try (BufferedReader reader = openReader(jar, classpathIndex)) {
+        String line = reader.readLine();
+        while (line != null) {
+          if (line.startsWith("- \"") && line.endsWith("\"")) {
+            libraries.add(line.substring(3, line.length() - 1));
+          }
+          line = reader.readLine();
+        }
+      }
+      return libraries;
+    }
+    String libraryLocation = attributes.getValue(BOOT_LIB_ATTRIBUTE);
+    if (libraryLocation != null) {
+      for (JarEntry entry : Collections.list(jar.entries())) {
+        if (entry.getName().startsWith(libraryLocation) && entry.getName()
+            .endsWith(".jar")) {
+          libraries.add(entry.getName());
+        }
+      }
+    }
+    return libraries;
+  }
+
+  private Map<String,List<String>> readIndex(JarFile jar, String location)
+      throws IOException {
+    Map<String,List<String>> index = new LinkedHashMap<>();
+    if (location == null || jar.getEntry(location) == null) {
+      return index;
+    }
+    try (BufferedReader reader = openReader(jar, location)) {
+      List<String> names = null;
+      String line = reader.readLine();
+      while (line != null) {
+        if (line.startsWith("- \"") && line.endsWith("\":")) {
+          names = new ArrayList<>();
+          index.put(line.substring(3, line.length() - 2), names);
+        } else if (line.startsWith("  - \"") && line.endsWith("\"")
+            && names != null) {
+          names.add(line.substring(5, line.length() - 1));
+        }
+        line = reader.readLine();
+      }
+    }
+    return index;
+  }
+
+  private String getLayer(Map<String,List<String>> layers, String name) {
+    for (Map.Entry<String,List<String>> layer : layers.entrySet()) {
+      for (String indexed : layer.getValue()) {
+        if (indexed.endsWith("/") ? name.startsWith(indexed)
+            : name.equals(indexed)) {
+          return layer.getKey();
+        }
+      }
+    }
+    return DEFAULT_LAYER;
+  }
+
+  private BufferedReader openReader(JarFile jar, String name)
+      throws IOException {
+    return new BufferedReader(new InputStreamReader(
+        jar.getInputStream(jar.getEntry(name)), StandardCharsets.UTF_8));
+  }
+
+  private byte[] zip(JarFile jar, List<JarEntry> entries) throws IOException {
+    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+    try (ZipOutputStream out = new ZipOutputStream(bytes)) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      for (JarEntry entry : entries) {
+        // Keep entry times so unchanged layers produce identical blobs
+        ZipEntry copy = new ZipEntry(entry.getName());
+        copy.setTime(entry.getTime());
+        out.putNextEntry(copy);
+        if (!entry.isDirectory()) {
+          try (InputStream in = jar.getInputStream(entry)) {
+            int bytesRead;
+            while ((bytesRead = in.read(buffer)) != -1) {
+              out.write(buffer, 0, bytesRead);
+            }
+          }
+        }
+        out.closeEntry();
+      }
+    }
+    return bytes.toByteArray();
+  }
+
+  private String sha1(JarFile jar, JarEntry entry) throws IOException {
+    MessageDigest digest = ChunkedAppUploader.getSha1Digest();
+    try (InputStream in = jar.getInputStream(entry)) {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int bytesRead;
+      while ((bytesRead = in.read(buffer)) != -1) {
+        digest.update(buffer, 0, bytesRead);
+      }
+    }
+    return ChunkedAppUploader.toHex(digest.digest());
+  }
+
+  private Set<String> getMissing(HttpClient client, List<Blob> blobs)
+      throws IOException {
+    Set<String> digests = new LinkedHashSet<>();
+    for (Blob blob : blobs) {
+      digests.add(blob.sha1);
+    }
+    Map<String,Object> request = new LinkedHashMap<>();
+    request.put("sha1", digests);
+    PostMethod method = new PostMethod(this.remote + "/api/apps/blobs/missing");
+    try {
+      method.addRequestHeader(this.header);
+      method.setRequestEntity(new StringRequestEntity(
+          om.writeValueAsString(request), "application/json", "UTF-8"));
+      int status = client.executeMethod(method);
+      if (status != HttpStatus.SC_OK) {
+        throw new IOException(
+            "Failed to check app blobs with code: " + status
+                + ",error message:" + method.getResponseBodyAsString());
+      }
+      Map<?,?> response = om.readValue(method.getResponseBodyAsStream(),
+          Map.class);
+      Set<String> missing = new HashSet<>();
+      Object listed = response.get("missing");
+      if (listed instanceof List) {
+        for (Object sha1 : (List<?>) listed) {
+          missing.add(sha1.toString());
+        }
+      }
+      return missing;
+    }
+    finally {
+      method.releaseConnection();
+    }
+  }
+
+  private void uploadBlob(HttpClient client, JarFile jar, Blob blob)
+      throws IOException {
+    PutMethod method = new PutMethod(
+        this.remote + "/api/apps/blobs/" + blob.sha1);
+    InputStream content = null;
+    try {
+      method.addRequestHeader(this.header);
+      RequestEntity entity;
+      if (blob.content != null) {
+        entity = new ByteArrayRequestEntity(blob.content,
+            "application/octet-stream");
+      } else {
+        content = jar.getInputStream(jar.getEntry(blob.name));
+        entity = new InputStreamRequestEntity(content, blob.size,
+            "application/octet-stream");
+      }
+      method.setRequestEntity(entity);
+      int status = client.executeMethod(method);
+      if (status != HttpStatus.SC_OK && status != HttpStatus.SC_CREATED) {
+        throw new IOException(
+            "Failed to upload " + blob.name + " with code: " + status
+                + ",error message:" + method.getResponseBodyAsString());
+      }
+      this.log.info("Uploaded " + blob.type + " " + blob.name);
+    }
+    finally {
+      if (content != null) {
+        content.close();
+      }
+      method.releaseConnection();
+    }
+  }
+
+  private String writeManifest(List<Blob> blobs) throws IOException {
+    List<Map<String,Object>> entries = new ArrayList<>(blobs.size());
+    for (Blob blob : blobs) {
+      Map<String,Object> entry = new LinkedHashMap<>();
+      entry.put("type", blob.type);
+      entry.put("name", blob.name);
+      entry.put("layer", blob.layer);
+      entry.put("sha1", blob.sha1);
+      entry.put("size", blob.size);
+      entries.add(entry);
+    }
+    Map<String,Object> manifest = new LinkedHashMap<>();
+    manifest.put("blobs", entries);
+    return om.writeValueAsString(manifest);
+  }
+
+  /**
+   * A nested library or the remaining entries of a layer.
+   */
+  private static final class Blob {
+
+    private final String type;
+
+    private final String name;
+
+    private final String layer;
+
+    private final String sha1;
+
+    private final long size;
+
+    private final byte[] content;
+
+    Blob(String type, String name, String layer, String sha1, long size) {
+      this(type, name, layer, sha1, size, null);
+    }
+
+    Blob(String type, String name, String layer, String sha1, long size,
+        byte[] content) {
+      this.type = type;
+      this.name = name;
+      this.layer = layer;
+      this.sha1 = sha1;
+      this.size = size;
+      this.content = content;
+    }
+
+  }
+
+}
@@ -174,6 +174,36 @@ public class RepackageMojo extends AbstractPackagerMojo {
 	@Parameter
 	private LayoutFactory layoutFactory;
 
+	/**
+	 * The number of threads used to compute the CRC, size and digests of nested
+	 * libraries before the archive is written. Values less than {@code 1} use one thread
+	 * per available processor, {@code 1} processes libraries sequentially.
+	 */
+	@Parameter(property = "osrc.repackage.threads", defaultValue = "0")
+	private int threads;
+
+	/**
+	 * Reuse the compressed content of entries that have not changed since the previous
+	 * repackage of the same target file, so that only changed entries are compressed
+	 * again. The previous archive is replaced once the new one has been written. Requires
+	 * a {@code classifier}: without one the original jar is replaced by the repackaged
+	 * archive, so there is no previous archive to reuse and the archive is repackaged
+	 * in full.
+	 */
+	@Parameter(property = "osrc.repackage.incremental", defaultValue = "false")
+	private boolean incremental;
+
+	/**
+	 * Compress nested libraries rather than storing them. The archive is smaller but
+	 * each library is inflated once, on first access, when the application starts.
+	 * Inflated libraries are cached in {@code ~/.osrc/nested-jars}, or the directory set
+	 * with the {@code loader.nested.cache} property, and reused by later launches. The
+	 * cache is not used if its directory is owned by another user or can be written by
+	 * other users, in which case libraries are inflated into memory instead.
+	 */
+	@Parameter(property = "osrc.repackage.compress-libraries", defaultValue = "false")
+	private boolean compressLibraries;
+
 	/**
 	 * Return the type of archive that should be packaged by this MOJO.
 	 * @return the value of the {@code layout} parameter, or {@code null} if the parameter
@@ -212,6 +242,9 @@ public class RepackageMojo extends AbstractPackagerMojo {
 		Artifact source = getSourceArtifact(this.classifier);
 		File target = getTargetFile(this.finalName, this.classifier, this.outputDirectory);
 		Repackager repackager = getRepackager(this.project,source);
+		if (this.incremental && !repackager.isIncrementalApplicable(target)) {
+			getLog().warn("Incremental repackage requires a classifier, repackaging " + target + " in full");
+		}
 		Libraries libraries = getLibraries(this.requiresUnpack);
 		try {
 			LaunchScript launchScript = getLaunchScript();
@@ -242,7 +275,11 @@ public class RepackageMojo extends AbstractPackagerMojo {
 	}
 
 	private Repackager getRepackager(MavenProject project,Artifact source) {
-		return getConfiguredPackager(() -> new Repackager(project,source));
+		Repackager repackager = getConfiguredPackager(() -> new Repackager(project,source));
+		repackager.setLibraryThreads(this.threads);
+		repackager.setIncremental(this.incremental);
+		repackager.setCompressLibraries(this.compressLibraries);
+		return repackager;
 	}
 
 	private LaunchScript getLaunchScript() throws IOException {
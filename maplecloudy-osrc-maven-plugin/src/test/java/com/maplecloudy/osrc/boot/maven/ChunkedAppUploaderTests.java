@@ -0,0 +1,503 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.maven;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.maplecloudy.osrc.boot.HttpUtils;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.commons.httpclient.Header;
+import org.apache.commons.httpclient.methods.PostMethod;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIOException;
+
+/**
+ * Tests for {@link ChunkedAppUploader}, run against a local stand-in for the
+ * chunked upload protocol of osrc app center.
+ *
+ * @author osrc
+ */
+class ChunkedAppUploaderTests {
+
+  private static final int CHUNK_SIZE = 1024;
+
+  private static final int CHUNKS = 11;
+
+  static final Header AUTHORIZATION = new Header("Authorization",
+      "Bearer test");
+
+  @TempDir
+  File temp;
+
+  private AppCenter appCenter;
+
+  private File file;
+
+  private byte[] content;
+
+  @BeforeEach
+  void setup() throws IOException {
+    this.appCenter = new AppCenter();
+    this.content = new byte[CHUNK_SIZE * (CHUNKS - 1) + 100];
+    new Random(1).nextBytes(this.content);
+    this.file = new File(this.temp, "app.jar");
+    Files.write(this.file.toPath(), this.content);
+  }
+
+  @AfterEach
+  void close() {
+    this.appCenter.close();
+  }
+
+  @Test
+  void uploadSendsEveryChunkOnce() throws IOException {
+    String uploadId = upload(1);
+    assertThat(uploadId).isEqualTo(sha1(this.content));
+    assertThat(this.appCenter.getArrivals()).containsExactly(0, 1, 2, 3, 4, 5,
+        6, 7, 8, 9, 10);
+    assertThat(install(uploadId)).isEqualTo(200);
+    assertThat(this.appCenter.getInstalled(uploadId)).isEqualTo(this.content);
+  }
+
+  @Test
+  void uploadWhenChunksAlreadyReceivedResumes() throws IOException {
+    this.appCenter.received(this.content, 0, 1, 2, 5, 10);
+    String uploadId = upload(1);
+    assertThat(this.appCenter.getArrivals()).containsExactly(3, 4, 6, 7, 8, 9);
+    assertThat(install(uploadId)).isEqualTo(200);
+    assertThat(this.appCenter.getInstalled(uploadId)).isEqualTo(this.content);
+  }
+
+  @Test
+  void uploadWhenAllChunksAlreadyReceivedSendsNothing() throws IOException {
+    this.appCenter.received(this.content, 0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10);
+    String uploadId = upload(4);
+    assertThat(this.appCenter.getArrivals()).isEmpty();
+    assertThat(install(uploadId)).isEqualTo(200);
+  }
+
+  @Test
+  void uploadRetriesChunkThatFailed() throws IOException {
+    this.appCenter.fail(3, 2, Failure.ERROR);
+    String uploadId = upload(1);
+    assertThat(this.appCenter.getAttempts(3)).isEqualTo(3);
+    assertThat(this.appCenter.getAttempts(4)).isEqualTo(1);
+    assertThat(install(uploadId)).isEqualTo(200);
+    assertThat(this.appCenter.getInstalled(uploadId)).isEqualTo(this.content);
+  }
+
+  @Test
+  void uploadRetriesChunkWhenConnectionDropped() throws IOException {
+    this.appCenter.fail(3, 1, Failure.DROP);
+    String uploadId = upload(1);
+    assertThat(this.appCenter.getAttempts(3)).isEqualTo(2);
+    assertThat(install(uploadId)).isEqualTo(200);
+  }
+
+  @Test
+  void uploadWhenChunkKeepsFailingSendsItMaxAttemptsTimes() {
+    this.appCenter.fail(3, Integer.MAX_VALUE, Failure.DROP);
+    assertThatIOException().isThrownBy(() -> upload(1));
+    assertThat(this.appCenter.getAttempts(3))
+        .isEqualTo(ChunkedAppUploader.MAX_ATTEMPTS);
+  }
+
+  @Test
+  void uploadWhenErrorsPersistFailsWithStatus() {
+    this.appCenter.fail(3, Integer.MAX_VALUE, Failure.ERROR);
+    assertThatIOException().isThrownBy(() -> upload(1))
+        .withMessageContaining("chunk 3").withMessageContaining("500");
+    assertThat(this.appCenter.getAttempts(3))
+        .isEqualTo(ChunkedAppUploader.MAX_ATTEMPTS);
+  }
+
+  @Test
+  void uploadAcceptsChunksOutOfOrder() throws IOException {
+    this.appCenter.holdChunk(0, 3);
+    String uploadId = upload(4);
+    List<Integer> arrivals = this.appCenter.getArrivals();
+    assertThat(arrivals).hasSize(CHUNKS);
+    assertThat(arrivals.indexOf(3)).isLessThan(arrivals.indexOf(0));
+    assertThat(install(uploadId)).isEqualTo(200);
+    assertThat(this.appCenter.getInstalled(uploadId)).isEqualTo(this.content);
+  }
+
+  @Test
+  void installWhenChunkMissingFails() throws IOException {
+    this.appCenter.received(this.content, 0, 1, 2);
+    assertThat(install(sha1(this.content))).isEqualTo(409);
+  }
+
+  private String upload(int threads) throws IOException {
+    return new ChunkedAppUploader(this.appCenter.getRemote(), AUTHORIZATION,
+        CHUNK_SIZE, threads, new SystemStreamLog()).upload(this.file);
+  }
+
+  private int install(String uploadId) throws IOException {
+    PostMethod method = new PostMethod(this.appCenter.getRemote()
+        + "/api/apps/install-app-upload?projectId=1&uploadId=" + uploadId);
+    try {
+      method.addRequestHeader(AUTHORIZATION);
+      return HttpUtils.createClient().executeMethod(method);
+    }
+    finally {
+      method.releaseConnection();
+    }
+  }
+
+  private static String sha1(byte[] bytes) {
+    return ChunkedAppUploader.toHex(
+        ChunkedAppUploader.getSha1Digest().digest(bytes));
+  }
+
+  /**
+   * How the stand-in fails a chunk request.
+   */
+  enum Failure {
+
+    /**
+     * Answer with an internal server error.
+     */
+    ERROR,
+
+    /**
+     * Close the connection without an answer.
+     */
+    DROP
+
+  }
+
+  /**
+   * Local stand-in for the chunked upload and blob endpoints of osrc app
+   * center.
+   */
+  static class AppCenter implements Closeable {
+
+    private static final ObjectMapper om = new ObjectMapper();
+
+    private static final String UPLOADS = "/api/apps/uploads";
+
+    private static final String BLOBS = "/api/apps/blobs";
+
+    private final HttpServer server;
+
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+
+    private final Map<String,Map<Integer,byte[]>> uploads = new ConcurrentHashMap<>();
+
+    private final Map<String,Integer> chunks = new ConcurrentHashMap<>();
+
+    private final Map<String,byte[]> installed = new ConcurrentHashMap<>();
+
+    private final Map<Integer,AtomicInteger> attempts = new ConcurrentHashMap<>();
+
+    private final Map<Integer,AtomicInteger> failures = new ConcurrentHashMap<>();
+
+    private final Map<Integer,Failure> failureTypes = new ConcurrentHashMap<>();
+
+    private final List<Integer> arrivals = Collections.synchronizedList(
+        new ArrayList<>());
+
+    private final Map<String,byte[]> blobs = new ConcurrentHashMap<>();
+
+    private final List<String> blobArrivals = Collections.synchronizedList(
+        new ArrayList<>());
+
+    private volatile boolean failBlobs;
+
+    private volatile int heldChunk = -1;
+
+    private volatile int releasingChunk = -1;
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    AppCenter() throws IOException {
+      this.server = HttpServer.create(
+          new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+      this.server.createContext(UPLOADS, this::handleUpload);
+      this.server.createContext("/api/apps/install-app-upload",
+          this::handleInstall);
+      this.server.createContext(BLOBS, this::handleBlob);
+      this.server.setExecutor(this.executor);
+      this.server.start();
+    }
+
+    String getRemote() {
+      return "http://127.0.0.1:" + this.server.getAddress().getPort();
+    }
+
+    void received(byte[] content, int... indexes) {
+      Map<Integer,byte[]> received = getUpload(sha1(content), CHUNKS);
+      for (int index : indexes) {
+        int start = index * CHUNK_SIZE;
+        received.put(index, Arrays.copyOfRange(content, start,
+            Math.min(start + CHUNK_SIZE, content.length)));
+      }
+    }
+
+    void fail(int index, int times, Failure type) {
+      this.failures.put(index, new AtomicInteger(times));
+      this.failureTypes.put(index, type);
+    }
+
+    void stored(byte[] blob) {
+      this.blobs.put(sha1(blob), blob);
+    }
+
+    void failBlobs() {
+      this.failBlobs = true;
+    }
+
+    void holdChunk(int index, int until) {
+      this.heldChunk = index;
+      this.releasingChunk = until;
+    }
+
+    List<Integer> getArrivals() {
+      synchronized (this.arrivals) {
+        return new ArrayList<>(this.arrivals);
+      }
+    }
+
+    int getAttempts(int index) {
+      AtomicInteger attempts = this.attempts.get(index);
+      return (attempts != null) ? attempts.get() : 0;
+    }
+
+    byte[] getInstalled(String uploadId) {
+      return this.installed.get(uploadId);
+    }
+
+    List<String> getBlobArrivals() {
+      synchronized (this.blobArrivals) {
+        return new ArrayList<>(this.blobArrivals);
+      }
+    }
+
+    byte[] getBlob(String sha1) {
+      return this.blobs.get(sha1);
+    }
+
+    private Map<Integer,byte[]> getUpload(String uploadId, int chunks) {
+      this.chunks.putIfAbsent(uploadId, chunks);
+      return this.uploads.computeIfAbsent(uploadId,
+          (key) -> new ConcurrentHashMap<>());
+    }
+
+    private void handleUpload(HttpExchange exchange) throws IOException {
+      if (!isAuthorized(exchange)) {
+        return;
+      }
+      String path = exchange.getRequestURI().getPath();
+      if ("POST".equals(exchange.getRequestMethod()) && path.equals(UPLOADS)) {
+        Map<?,?> request = om.readValue(exchange.getRequestBody(), Map.class);
+        String uploadId = request.get("sha1").toString();
+        int chunks = ((Number) request.get("chunks")).intValue();
+        Map<String,Object> response = new HashMap<>();
+        response.put("uploadId", uploadId);
+        response.put("received",
+            new TreeSet<>(getUpload(uploadId, chunks).keySet()));
+        send(exchange, 200, om.writeValueAsBytes(response));
+        return;
+      }
+      String[] segments = path.substring(UPLOADS.length() + 1).split("/");
+      if (!"PUT".equals(exchange.getRequestMethod()) || segments.length != 3
+          || !"chunks".equals(segments[1])) {
+        send(exchange, 404, null);
+        return;
+      }
+      int index = Integer.parseInt(segments[2]);
+      this.attempts.computeIfAbsent(index, (key) -> new AtomicInteger())
+          .incrementAndGet();
+      AtomicInteger failures = this.failures.get(index);
+      if (failures != null && failures.getAndDecrement() > 0) {
+        if (this.failureTypes.get(index) == Failure.DROP) {
+          // The server closes the connection without an answer
+          throw new IOException("Dropped chunk " + index);
+        }
+        send(exchange, 500, "Unavailable".getBytes(StandardCharsets.UTF_8));
+        return;
+      }
+      byte[] bytes = read(exchange.getRequestBody());
+      if (!sha1(bytes).equals(
+          exchange.getRequestHeaders().getFirst(
+              ChunkedAppUploader.CHUNK_SHA1_HEADER))) {
+        send(exchange, 400, "Checksum mismatch".getBytes(StandardCharsets.UTF_8));
+        return;
+      }
+      if (index == this.heldChunk) {
+        await();
+      }
+      this.arrivals.add(index);
+      this.uploads.get(segments[0]).put(index, bytes);
+      if (index == this.releasingChunk) {
+        this.release.countDown();
+      }
+      send(exchange, 201, null);
+    }
+
+    private void handleInstall(HttpExchange exchange) throws IOException {
+      if (!isAuthorized(exchange)) {
+        return;
+      }
+      String query = exchange.getRequestURI().getQuery();
+      String uploadId = query.substring(query.indexOf("uploadId=") + 9);
+      Map<Integer,byte[]> received = this.uploads.get(uploadId);
+      Integer chunks = this.chunks.get(uploadId);
+      if (received == null || chunks == null) {
+        send(exchange, 404, null);
+        return;
+      }
+      ByteArrayOutputStream content = new ByteArrayOutputStream();
+      for (int index = 0; index < chunks; index++) {
+        byte[] bytes = received.get(index);
+        if (bytes == null) {
+          send(exchange, 409, ("Missing chunk " + index)
+              .getBytes(StandardCharsets.UTF_8));
+          return;
+        }
+        content.write(bytes);
+      }
+      if (!sha1(content.toByteArray()).equals(uploadId)) {
+        send(exchange, 409, "Checksum mismatch".getBytes(StandardCharsets.UTF_8));
+        return;
+      }
+      this.installed.put(uploadId, content.toByteArray());
+      send(exchange, 200, null);
+    }
+
+    private void handleBlob(HttpExchange exchange) throws IOException {
+      if (!isAuthorized(exchange)) {
+        return;
+      }
+      String name = exchange.getRequestURI().getPath()
+          .substring(BLOBS.length() + 1);
+      if ("POST".equals(exchange.getRequestMethod())
+          && "missing".equals(name)) {
+        Map<?,?> request = om.readValue(exchange.getRequestBody(), Map.class);
+        List<String> missing = new ArrayList<>();
+        for (Object sha1 : (List<?>) request.get("sha1")) {
+          if (!this.blobs.containsKey(sha1.toString())) {
+            missing.add(sha1.toString());
+          }
+        }
+        send(exchange, 200, om.writeValueAsBytes(
+            Collections.singletonMap("missing", missing)));
+        return;
+      }
+      if (!"PUT".equals(exchange.getRequestMethod())) {
+        send(exchange, 404, null);
+        return;
+      }
+      byte[] bytes = read(exchange.getRequestBody());
+      if (this.failBlobs) {
+        send(exchange, 500, "Unavailable".getBytes(StandardCharsets.UTF_8));
+        return;
+      }
+      if (!sha1(bytes).equals(name)) {
+        send(exchange, 400, "Checksum mismatch".getBytes(StandardCharsets.UTF_8));
+        return;
+      }
+      this.blobArrivals.add(name);
+      this.blobs.put(name, bytes);
+      send(exchange, 201, null);
+    }
+
+    private boolean isAuthorized(HttpExchange exchange) throws IOException {
+      if (AUTHORIZATION.getValue().equals(
+          exchange.getRequestHeaders().getFirst(AUTHORIZATION.getName()))) {
+        return true;
+      }
+      send(exchange, 401, null);
+      return false;
+    }
+
+    private void await() throws IOException {
+      try {
+        if (!this.release.await(10, TimeUnit.SECONDS)) {
+          throw new IOException("Chunk " + this.releasingChunk
+              + " did not arrive");
+        }
+      }
+      catch (InterruptedException ex) {
+        Thread.currentThread().interrupt();
+        throw new IOException(ex);
+      }
+    }
+
+    private static byte[] read(InputStream inputStream) throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      byte[] buffer = new byte[4096];
+      int bytesRead;
+      while ((bytesRead = inputStream.read(buffer)) != -1) {
+        bytes.write(buffer, 0, bytesRead);
+      }
+      return bytes.toByteArray();
+    }
+
+    private static void send(HttpExchange exchange, int status, byte[] body)
+        throws IOException {
+      exchange.sendResponseHeaders(status, (body != null) ? body.length : -1);
+      if (body != null) {
+        try (OutputStream outputStream = exchange.getResponseBody()) {
+          outputStream.write(body);
+        }
+      }
+      exchange.close();
+    }
+
+    @Override
+    public void close() {
+      this.release.countDown();
+      this.server.stop(0);
+      this.executor.shutdownNow();
+    }
+
+  }
+
+}
@@ -0,0 +1,285 @@
+/*
+ * Copyright 2012-2021 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.maplecloudy.osrc.boot.maven;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.maplecloudy.osrc.boot.maven.ChunkedAppUploaderTests.AppCenter;
+import org.apache.maven.plugin.logging.SystemStreamLog;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIOException;
+
+/**
+ * Tests for {@link LayerDiffUploader}, run against the local stand-in for osrc
+ * app center of {@link ChunkedAppUploaderTests}.
+ *
+ * @author osrc
+ */
+class LayerDiffUploaderTests {
+
+  private static final String CLASSPATH_INDEX = "BOOT-INF/classpath.idx";
+
+  private static final String LAYERS_INDEX = "BOOT-INF/layers.idx";
+
+  private static final String MAIN_CLASS = "BOOT-INF/classes/app/Main.class";
+
+  private static final ObjectMapper om = new ObjectMapper();
+
+  @TempDir
+  File temp;
+
+  private AppCenter appCenter;
+
+  private Map<String,byte[]> libraries;
+
+  private byte[] mainClass;
+
+  @BeforeEach
+  void setup() throws IOException {
+    this.appCenter = new AppCenter();
+    this.libraries = new LinkedHashMap<>();
+    this.libraries.put("BOOT-INF/lib/a.jar", bytes(1, 3000));
+    this.libraries.put("BOOT-INF/lib/b.jar", bytes(2, 5000));
+    this.libraries.put("BOOT-INF/lib/c.jar", bytes(3, 2000));
+    this.mainClass = bytes(4, 500);
+  }
+
+  @AfterEach
+  void close() {
+    this.appCenter.close();
+  }
+
+  @Test
+  void uploadSendsEveryBlobWhenNoneAreStored() throws IOException {
+    List<Map<String,Object>> blobs = upload(createJar(), 1);
+    assertThat(this.appCenter.getBlobArrivals())
+        .containsExactlyInAnyOrderElementsOf(getSha1s(blobs));
+    for (Map<String,Object> blob : blobs) {
+      assertThat(this.appCenter.getBlob((String) blob.get("sha1")))
+          .hasSize(((Number) blob.get("size")).intValue());
+    }
+  }
+
+  @Test
+  void uploadSendsOnlyMissingBlobs() throws IOException {
+    this.appCenter.stored(this.libraries.get("BOOT-INF/lib/a.jar"));
+    this.appCenter.stored(this.libraries.get("BOOT-INF/lib/c.jar"));
+    List<Map<String,Object>> blobs = upload(createJar(), 4);
+    assertThat(this.appCenter.getBlobArrivals()).containsExactlyInAnyOrder(
+        sha1(this.libraries.get("BOOT-INF/lib/b.jar")),
+        getSha1(blobs, "application"));
+  }
+
+  @Test
+  void uploadWhenNothingChangedSendsNothing() throws IOException {
+    File jar = createJar();
+    List<Map<String,Object>> first = upload(jar, 4);
+    int arrivals = this.appCenter.getBlobArrivals().size();
+    List<Map<String,Object>> second = upload(jar, 4);
+    assertThat(this.appCenter.getBlobArrivals()).hasSize(arrivals);
+    assertThat(second).isEqualTo(first);
+  }
+
+  @Test
+  void uploadWhenApplicationChangedSendsOnlyApplicationLayer()
+      throws IOException {
+    List<Map<String,Object>> first = upload(createJar(), 1);
+    this.mainClass = bytes(5, 500);
+    List<Map<String,Object>> second = upload(createJar(), 1);
+    String application = getSha1(second, "application");
+    assertThat(application).isNotEqualTo(getSha1(first, "application"));
+    assertThat(this.appCenter.getBlobArrivals()).containsOnlyOnce(application)
+        .hasSize(first.size() + 1);
+  }
+
+  @Test
+  void uploadReturnsManifestListingEveryBlob() throws IOException {
+    List<Map<String,Object>> blobs = upload(createJar(), 1);
+    assertThat(blobs).extracting((blob) -> blob.get("type"))
+        .containsExactly(LayerDiffUploader.LAYER, LayerDiffUploader.LIBRARY,
+            LayerDiffUploader.LIBRARY, LayerDiffUploader.LIBRARY);
+    assertThat(blobs).extracting((blob) -> blob.get("name"))
+        .containsExactly("application", "BOOT-INF/lib/a.jar",
+            "BOOT-INF/lib/b.jar", "BOOT-INF/lib/c.jar");
+    assertThat(blobs).extracting((blob) -> blob.get("layer"))
+        .containsExactly("application", "dependencies", "dependencies",
+            "dependencies");
+    for (Map.Entry<String,byte[]> library : this.libraries.entrySet()) {
+      assertThat(getSha1(blobs, library.getKey()))
+          .isEqualTo(sha1(library.getValue()));
+    }
+  }
+
+  @Test
+  void uploadSendsLayerAsZipOfRemainingEntries() throws IOException {
+    List<Map<String,Object>> blobs = upload(createJar(), 1);
+    Map<String,byte[]> entries = unzip(
+        this.appCenter.getBlob(getSha1(blobs, "application")));
+    assertThat(entries).containsKeys(JarFile.MANIFEST_NAME, CLASSPATH_INDEX,
+        LAYERS_INDEX, MAIN_CLASS);
+    assertThat(entries).doesNotContainKeys("BOOT-INF/lib/a.jar",
+        "BOOT-INF/lib/b.jar", "BOOT-INF/lib/c.jar");
+    assertThat(entries.get(MAIN_CLASS)).isEqualTo(this.mainClass);
+  }
+
+  @Test
+  void uploadWhenLibraryPresentTwiceSendsItOnce() throws IOException {
+    this.libraries.put("BOOT-INF/lib/copy.jar",
+        this.libraries.get("BOOT-INF/lib/a.jar"));
+    List<Map<String,Object>> blobs = upload(createJar(), 4);
+    String sha1 = sha1(this.libraries.get("BOOT-INF/lib/a.jar"));
+    assertThat(this.appCenter.getBlobArrivals()).containsOnlyOnce(sha1);
+    assertThat(getSha1(blobs, "BOOT-INF/lib/copy.jar")).isEqualTo(sha1);
+  }
+
+  @Test
+  void uploadWhenBlobFailsFailsWithStatus() throws IOException {
+    File jar = createJar();
+    this.appCenter.failBlobs();
+    assertThatIOException().isThrownBy(() -> upload(jar, 1))
+        .withMessageContaining("Failed to upload")
+        .withMessageContaining("500");
+  }
+
+  private List<Map<String,Object>> upload(File file, int threads)
+      throws IOException {
+    try (JarFile jar = new JarFile(file)) {
+      String manifest = new LayerDiffUploader(this.appCenter.getRemote(),
+          ChunkedAppUploaderTests.AUTHORIZATION, threads,
+          new SystemStreamLog()).upload(jar);
+      List<Map<String,Object>> blobs = new ArrayList<>();
+      for (Object blob : (List<?>) om.readValue(manifest, Map.class)
+          .get("blobs")) {
+        blobs.add(castMap(blob));
+      }
+      return blobs;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String,Object> castMap(Object value) {
+    return (Map<String,Object>) value;
+  }
+
+  private File createJar() throws IOException {
+    Manifest manifest = new Manifest();
+    Attributes attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue("Osrc-Boot-Classpath-Index", CLASSPATH_INDEX);
+    attributes.putValue("Osrc-Boot-Layers-Index", LAYERS_INDEX);
+    StringBuilder classpathIndex = new StringBuilder();
+    for (String library : this.libraries.keySet()) {
+      classpathIndex.append("- \"").append(library).append("\"\n");
+    }
+    String layersIndex = "- \"dependencies\":\n  - \"BOOT-INF/lib/\"\n"
+        + "- \"application\":\n  - \"BOOT-INF/classes/\"\n"
+        + "  - \"" + CLASSPATH_INDEX + "\"\n  - \"" + LAYERS_INDEX + "\"\n"
+        + "  - \"META-INF/\"\n";
+    File file = new File(this.temp, "app-" + System.nanoTime() + ".jar");
+    try (JarOutputStream out = new JarOutputStream(
+        new FileOutputStream(file), manifest)) {
+      write(out, MAIN_CLASS, this.mainClass);
+      write(out, CLASSPATH_INDEX,
+          classpathIndex.toString().getBytes(StandardCharsets.UTF_8));
+      write(out, LAYERS_INDEX, layersIndex.getBytes(StandardCharsets.UTF_8));
+      for (Map.Entry<String,byte[]> library : this.libraries.entrySet()) {
+        write(out, library.getKey(), library.getValue());
+      }
+    }
+    return file;
+  }
+
+  private void write(JarOutputStream out, String name, byte[] content)
+      throws IOException {
+    // Fixed times so that the same content always produces the same layer
+    ZipEntry entry = new ZipEntry(name);
+    entry.setTime(0);
+    out.putNextEntry(entry);
+    out.write(content);
+    out.closeEntry();
+  }
+
+  private Map<String,byte[]> unzip(byte[] zip) throws IOException {
+    Map<String,byte[]> entries = new LinkedHashMap<>();
+    try (ZipInputStream in = new ZipInputStream(
+        new ByteArrayInputStream(zip))) {
+      ZipEntry entry = in.getNextEntry();
+      while (entry != null) {
+        ByteArrayOutputStream content = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int bytesRead;
+        while ((bytesRead = in.read(buffer)) != -1) {
+          content.write(buffer, 0, bytesRead);
+        }
+        entries.put(entry.getName(), content.toByteArray());
+        entry = in.getNextEntry();
+      }
+    }
+    return entries;
+  }
+
+  private static List<String> getSha1s(List<Map<String,Object>> blobs) {
+    List<String> sha1s = new ArrayList<>();
+    for (Map<String,Object> blob : blobs) {
+      sha1s.add((String) blob.get("sha1"));
+    }
+    return sha1s;
+  }
+
+  private static String getSha1(List<Map<String,Object>> blobs, String name) {
+    for (Map<String,Object> blob : blobs) {
+      if (name.equals(blob.get("name"))) {
+        return (String) blob.get("sha1");
+      }
+    }
+    throw new IllegalStateException("No blob named " + name);
+  }
+
+  private static byte[] bytes(long seed, int size) {
+    byte[] bytes = new byte[size];
+    new Random(seed).nextBytes(bytes);
+    return bytes;
+  }
+
+  private static String sha1(byte[] bytes) {
+    return ChunkedAppUploader.toHex(
+        ChunkedAppUploader.getSha1Digest().digest(bytes));
+  }
+
+}